@@ -0,0 +1,110 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the {@link AsyncRepository} under many concurrent callers. The repository is sized to a
+ * pool of {@link #CONNECTIONS} connections, so that the callers outnumber the connections. Operations rejected
+ * because the repository is saturated are reported using the {@code rejected} counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class AsyncRepositoryBenchmark
+{
+
+    /**
+     * The number of connections in the connection pool.
+     */
+    private static final int CONNECTIONS = 8;
+
+    @Param({"8", "1024"})
+    public int queueCapacity;
+
+    private BenchmarkDatabase database;
+    private AsyncRepository   instance;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(BenchmarkDatabase.POOLED, 10000, CONNECTIONS);
+        instance = new AsyncRepository(new Facade(database.getEntityManagerFactory()),
+                                       database.getConnectionPool().getMaximumConnections(),
+                                       queueCapacity);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        instance.close();
+        database.close();
+    }
+
+    /**
+     * The operations rejected by the {@link AsyncRepository}.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Rejections
+    {
+
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            rejected = 0;
+        }
+    }
+
+    @Benchmark
+    public Customer findCustomer(Rejections rejections)
+    {
+        return join(instance.findCustomer(database.randomCustomer().getId()), rejections);
+    }
+
+    @Benchmark
+    public Long getTotal(Rejections rejections)
+    {
+        return join(instance.getTotal(database.randomOrder()), rejections);
+    }
+
+    @Benchmark
+    public Order createOrderWithLines(Rejections rejections)
+    {
+        List<OrderLine> lines = new ArrayList<>(BenchmarkDatabase.LINES_PER_ORDER);
+        for (int x = 0; x < BenchmarkDatabase.LINES_PER_ORDER; x++)
+            lines.add(new OrderLine(x + 1, database.randomItem()));
+
+        return join(instance.createOrder(database.randomCustomer(), lines), rejections);
+    }
+
+    /**
+     * Waits for the provided operation to complete, counting the operation when it is rejected.
+     */
+    private static <T> T join(CompletableFuture<T> future, Rejections rejections)
+    {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (!(e.getCause() instanceof RejectedExecutionException))
+                throw e;
+            rejections.rejected++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import com.zaxxer.hikari.HikariConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Embedded in-memory database used by the benchmarks. The database is seeded with a scaled up version of the rows in
+ * {@code data.sql}: the provided number of customers, each placing a single order with {@link #LINES_PER_ORDER}
+ * lines, chosen from {@link #ITEMS} item types.
+ */
+class BenchmarkDatabase implements AutoCloseable
+{
+
+    /**
+     * The number of item types in the database.
+     */
+    static final int ITEMS = 100;
+
+    /**
+     * The number of lines in each seeded order.
+     */
+    static final int LINES_PER_ORDER = 3;
+
+    /**
+     * The number of rows written in each seeding transaction.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Used to give each database a unique name, so that databases created by different trials are separated.
+     */
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    /**
+     * The persistence unit using the pooled identifier generator.
+     */
+    static final String POOLED = "jpau-bench";
+
+    /**
+     * The persistence unit using {@code IDENTITY} columns.
+     */
+    static final String IDENTITY = "jpau-bench-identity";
+
+    /**
+     * The JDBC url of the database.
+     */
+    private final String url;
+
+    /**
+     * The connection pool connected to the database, {@code null} when the connections are provided by the
+     * persistence unit.
+     */
+    private final ConnectionPool connectionPool;
+
+    /**
+     * The {@code EntityManagerFactory} connected to the database.
+     */
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * The seeded customers, sorted by their id.
+     */
+    private final List<Customer> customers = new ArrayList<>();
+
+    /**
+     * The seeded item types, sorted by their id.
+     */
+    private final List<ItemType> items = new ArrayList<>();
+
+    /**
+     * The seeded orders, sorted by their id.
+     */
+    private final List<Order> orders = new ArrayList<>();
+
+    /**
+     * Creates and seeds a new database using the pooled identifier generator.
+     *
+     * @param rows The number of customers and orders to seed the database with.
+     */
+    BenchmarkDatabase(int rows)
+    {
+        this(POOLED, rows, 0);
+    }
+
+    /**
+     * Creates and seeds a new database.
+     *
+     * @param persistenceUnit The name of the persistence unit to create the database from.
+     * @param rows            The number of customers and orders to seed the database with.
+     */
+    BenchmarkDatabase(String persistenceUnit, int rows)
+    {
+        this(persistenceUnit, rows, 0);
+    }
+
+    /**
+     * Creates and seeds a new database.
+     *
+     * @param persistenceUnit The name of the persistence unit to create the database from.
+     * @param rows            The number of customers and orders to seed the database with.
+     * @param connections     The number of connections in the {@link ConnectionPool} to connect through, {@code 0} to
+     *                        use the connections provided by the persistence unit.
+     */
+    BenchmarkDatabase(String persistenceUnit, int rows, int connections)
+    {
+        this.url = "jdbc:h2:mem:bench" + databases.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        if (connections > 0) {
+            HikariConfig configuration = new HikariConfig();
+            configuration.setJdbcUrl(url);
+            configuration.setUsername("sa");
+            configuration.setPassword("");
+            configuration.setMaximumPoolSize(connections);
+            this.connectionPool = new ConnectionPool(configuration);
+            this.entityManagerFactory = connectionPool.createEntityManagerFactory(persistenceUnit);
+        } else {
+            this.connectionPool = null;
+            this.entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnit, properties());
+        }
+
+        seed(rows);
+    }
+
+    /**
+     * Returns the connection properties of the database.
+     *
+     * @return The connection properties of the database.
+     */
+    private Map<String, Object> properties()
+    {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", url);
+        properties.put("javax.persistence.jdbc.user", "sa");
+        properties.put("javax.persistence.jdbc.password", "");
+
+        return properties;
+    }
+
+    /**
+     * Writes the item types, customers and orders to the database.
+     *
+     * @param rows The number of customers and orders to write.
+     */
+    private void seed(int rows)
+    {
+        try (TransactionalRepository repository = new TransactionalRepository(entityManagerFactory)) {
+            for (int x = 1; x <= ITEMS; x++)
+                items.add(repository.createItemType("Item " + x, "Description " + x, x));
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int chunk = 0; chunk < rows; chunk += CHUNK_SIZE) {
+            try (TransactionalRepository repository = new TransactionalRepository(entityManagerFactory)) {
+                for (int x = chunk; x < Math.min(rows, chunk + CHUNK_SIZE); x++) {
+                    Customer customer = repository.createCustomer("Customer " + x, "customer" + x + "@example.com");
+                    customers.add(customer);
+                    List<OrderLine> lines = new ArrayList<>();
+                    for (int y = 0; y < LINES_PER_ORDER; y++)
+                        lines.add(new OrderLine(random.nextInt(1, 10), items.get(random.nextInt(ITEMS))));
+                    orders.add(repository.createOrder(customer, lines));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the repository to benchmark.
+     *
+     * @param type {@code facade} to create a {@link Facade}, or {@code transactional} to create a long-lived
+     *             {@link TransactionalRepository}, that must be closed by the caller.
+     * @return The resulting repository.
+     */
+    Repository createRepository(String type)
+    {
+        switch (type) {
+            case "facade":
+                return new Facade(entityManagerFactory);
+            case "transactional":
+                return new TransactionalRepository(entityManagerFactory);
+            default:
+                throw new IllegalArgumentException("Unknown repository " + type);
+        }
+    }
+
+    /**
+     * Returns the {@code EntityManagerFactory} connected to the database.
+     *
+     * @return The {@code EntityManagerFactory} connected to the database.
+     */
+    EntityManagerFactory getEntityManagerFactory()
+    {
+        return this.entityManagerFactory;
+    }
+
+    /**
+     * Returns the connection pool connected to the database.
+     *
+     * @return The connection pool connected to the database, {@code null} when the connections are provided by the
+     * persistence unit.
+     */
+    ConnectionPool getConnectionPool()
+    {
+        return this.connectionPool;
+    }
+
+    /**
+     * Returns a random seeded customer.
+     *
+     * @return The random seeded customer.
+     */
+    Customer randomCustomer()
+    {
+        return customers.get(ThreadLocalRandom.current().nextInt(customers.size()));
+    }
+
+    /**
+     * Returns a random seeded item type.
+     *
+     * @return The random seeded item type.
+     */
+    ItemType randomItem()
+    {
+        return items.get(ThreadLocalRandom.current().nextInt(items.size()));
+    }
+
+    /**
+     * Returns a random seeded order.
+     *
+     * @return The random seeded order.
+     */
+    Order randomOrder()
+    {
+        return orders.get(ThreadLocalRandom.current().nextInt(orders.size()));
+    }
+
+    /**
+     * Returns the id after which the last page of the provided size starts.
+     *
+     * @param limit The size of the page.
+     * @return The id after which the last page of orders starts.
+     */
+    long lastOrderPage(int limit)
+    {
+        int index = orders.size() - limit - 1;
+
+        return index < 0 ? 0 : orders.get(index).getId();
+    }
+
+    /**
+     * Drops the database and closes the {@code EntityManagerFactory} and the connection pool.
+     */
+    @Override public void close()
+    {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.createNativeQuery("SHUTDOWN").executeUpdate();
+        } catch (RuntimeException e) {
+            // H2 closes the connection while shutting down
+        } finally {
+            entityManager.close();
+        }
+
+        entityManagerFactory.close();
+        if (connectionPool != null)
+            connectionPool.close();
+    }
+}
@@ -0,0 +1,110 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.Order;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding the orders of a large order graph to hash based collections, using orders read through a
+ * long-lived {@link TransactionalRepository}, so that lazy associations touched by {@code equals} or
+ * {@code hashCode} would be loaded. The statements executed during each operation are reported using the
+ * {@code statements} counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityCollectionBenchmark
+{
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private BenchmarkDatabase       database;
+    private Statistics              statistics;
+    private TransactionalRepository instance;
+    private List<Order>             orders;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(rows);
+        statistics = database.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Reads the orders using a new repository before each iteration, so that no associations are loaded already.
+     */
+    @Setup(Level.Iteration)
+    public void readOrders()
+    {
+        instance = new TransactionalRepository(database.getEntityManagerFactory());
+        orders = instance.getOrders(OrderFetchPlan.HEADER);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeRepository()
+    {
+        instance.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        database.close();
+    }
+
+    /**
+     * The statements executed by the operations.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Statements
+    {
+
+        public long statements;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            statements = 0;
+        }
+    }
+
+    @Benchmark
+    public int addToSet(Statements statements)
+    {
+        long       before = statistics.getPrepareStatementCount();
+        Set<Order> set    = new HashSet<>(orders);
+        int        found  = 0;
+        for (Order order : orders)
+            if (set.contains(order))
+                found++;
+        statements.statements += statistics.getPrepareStatementCount() - before;
+
+        return found;
+    }
+
+    @Benchmark
+    public int groupByCustomer(Statements statements)
+    {
+        long                   before = statistics.getPrepareStatementCount();
+        Map<Customer, Integer> counts = new HashMap<>();
+        for (Order order : orders)
+            counts.merge(order.getCustomer(), 1, Integer::sum);
+        statements.statements += statistics.getPrepareStatementCount() - before;
+
+        return counts.size();
+    }
+}
@@ -0,0 +1,89 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Order;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Repository#getOrders()} with lazy many-to-one associations, as declared on the entities, to the
+ * same operation with the associations fetched eagerly, as mapped by {@code META-INF/eager-orm.xml}. Besides the
+ * time of each call, the number of statements prepared and the number of entities loaded are reported as the
+ * {@code statements} and {@code entities} counters, which can be divided by the {@code calls} counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FetchBenchmark
+{
+
+    /**
+     * The persistence unit mapping the many-to-one associations eagerly.
+     */
+    private static final String EAGER = "jpau-bench-eager";
+
+    @Param({"lazy", "eager"})
+    public String fetch;
+
+    @Param({"1000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private Repository        instance;
+    private Statistics        statistics;
+
+    /**
+     * The statements and entities counted during an iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters
+    {
+
+        public long calls;
+        public long statements;
+        public long entities;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            calls = 0;
+            statements = 0;
+            entities = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase("eager".equals(fetch) ? EAGER : BenchmarkDatabase.POOLED, rows);
+        instance = database.createRepository("facade");
+        statistics = database.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Order> getOrders(Counters counters)
+    {
+        long statements = statistics.getPrepareStatementCount();
+        long entities   = statistics.getEntityLoadCount();
+
+        List<Order> orders = instance.getOrders();
+        counters.calls++;
+        counters.statements += statistics.getPrepareStatementCount() - statements;
+        counters.entities += statistics.getEntityLoadCount() - entities;
+
+        return orders;
+    }
+}
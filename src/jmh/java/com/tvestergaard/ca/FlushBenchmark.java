@@ -0,0 +1,77 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time of committing a long-lived {@link TransactionalRepository} holding a large persistence context,
+ * of which only a small fraction of the entities have been changed. The entity classes are enhanced with dirty
+ * tracking by the build, so the flush only visits the changed entities. To measure the flush comparing every managed
+ * entity to its snapshot, disable {@code enableDirtyTracking} in {@code build.gradle} and run the benchmark again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FlushBenchmark
+{
+
+    @Param({"50000"})
+    public int entities;
+
+    @Param({"1"})
+    public int dirtyPercent;
+
+    private BenchmarkDatabase       database;
+    private TransactionalRepository instance;
+    private List<Customer>          customers;
+
+    /**
+     * The number of entities changed before each flush.
+     */
+    private int dirty;
+
+    /**
+     * The number of flushes performed, used to change the entities to a new value and to choose different entities
+     * before each flush.
+     */
+    private int flushes;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(entities);
+        instance = new TransactionalRepository(database.getEntityManagerFactory());
+        customers = instance.getCustomers();
+        dirty = Math.max(1, customers.size() * dirtyPercent / 100);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        instance.close();
+        database.close();
+    }
+
+    /**
+     * Changes the name of {@code dirtyPercent} percent of the managed customers, spread over the entire persistence
+     * context, and commits the transaction.
+     */
+    @Benchmark
+    public int flush()
+    {
+        int flush  = ++flushes;
+        int stride = customers.size() / dirty;
+        for (int x = 0; x < dirty; x++)
+            customers.get((x * stride + flush) % customers.size()).setName("Customer " + x + " flush " + flush);
+
+        instance.commit().begin();
+
+        return flush;
+    }
+}
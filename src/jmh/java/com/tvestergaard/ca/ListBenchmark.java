@@ -0,0 +1,122 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the time taken by the {@link Repository} operations that read every row of a table, or a page of rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ListBenchmark
+{
+
+    @Param({"facade", "transactional"})
+    public String repository;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"100"})
+    public int pageSize;
+
+    private BenchmarkDatabase database;
+    private Repository        instance;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(rows);
+        instance = database.createRepository(repository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (instance instanceof TransactionalRepository)
+            ((TransactionalRepository) instance).close();
+        database.close();
+    }
+
+    @Benchmark
+    public List<Customer> getCustomers()
+    {
+        return instance.getCustomers();
+    }
+
+    @Benchmark
+    public List<Customer> getCustomersPage()
+    {
+        return instance.getCustomers(database.randomCustomer().getId(), pageSize);
+    }
+
+    @Benchmark
+    public long streamCustomers()
+    {
+        try (Stream<Customer> customers = instance.streamCustomers(pageSize)) {
+            return customers.count();
+        }
+    }
+
+    @Benchmark
+    public List<Order> getOrders()
+    {
+        return instance.getOrders();
+    }
+
+    @Benchmark
+    public List<Order> getOrdersDetails()
+    {
+        return instance.getOrders(OrderFetchPlan.DETAILS);
+    }
+
+    @Benchmark
+    public List<Order> getOrdersPage()
+    {
+        return instance.getOrders(database.randomOrder().getId(), pageSize);
+    }
+
+    @Benchmark
+    public List<Order> getOrdersLastPage()
+    {
+        return instance.getOrders(database.lastOrderPage(pageSize), pageSize);
+    }
+
+    @Benchmark
+    public long streamOrders()
+    {
+        try (Stream<Order> orders = instance.streamOrders(pageSize)) {
+            return orders.count();
+        }
+    }
+
+    @Benchmark
+    public List<ItemType> getItems()
+    {
+        return instance.getItems();
+    }
+
+    @Benchmark
+    public List<ItemType> getItemsPage()
+    {
+        return instance.getItems(database.randomItem().getId(), pageSize);
+    }
+
+    @Benchmark
+    public long streamItems()
+    {
+        try (Stream<ItemType> items = instance.streamItems(pageSize)) {
+            return items.count();
+        }
+    }
+}
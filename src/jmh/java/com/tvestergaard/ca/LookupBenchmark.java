@@ -0,0 +1,117 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the throughput of the {@link Repository} operations that read a single row, or the rows belonging to a
+ * single customer or order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark
+{
+
+    @Param({"facade", "transactional"})
+    public String repository;
+
+    @Param({"10000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private Repository        instance;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(rows);
+        instance = database.createRepository(repository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (instance instanceof TransactionalRepository)
+            ((TransactionalRepository) instance).close();
+        database.close();
+    }
+
+    @Benchmark
+    public Customer findCustomer()
+    {
+        return instance.findCustomer(database.randomCustomer().getId());
+    }
+
+    @Benchmark
+    public ItemType getItem()
+    {
+        return instance.getItem(database.randomItem().getId());
+    }
+
+    @Benchmark
+    public Order getOrder()
+    {
+        return instance.getOrder(database.randomOrder().getId());
+    }
+
+    @Benchmark
+    public Order getOrderDetails()
+    {
+        return instance.getOrder(database.randomOrder().getId(), OrderFetchPlan.DETAILS);
+    }
+
+    @Benchmark
+    public long getTotal()
+    {
+        return instance.getTotal(database.randomOrder());
+    }
+
+    @Benchmark
+    public OrderTotals getTotals()
+    {
+        return instance.getTotals(Arrays.asList(database.randomOrder(), database.randomOrder()));
+    }
+
+    @Benchmark
+    public OrderTotals getTotalsFromCustomer()
+    {
+        return instance.getTotals(database.randomCustomer());
+    }
+
+    @Benchmark
+    public List<Order> getOrdersFromCustomer()
+    {
+        return instance.getOrders(database.randomCustomer());
+    }
+
+    @Benchmark
+    public List<Order> getOrdersFromCustomerDetails()
+    {
+        return instance.getOrders(database.randomCustomer(), OrderFetchPlan.DETAILS);
+    }
+
+    @Benchmark
+    public List<Order> getOrdersFromCustomerPage()
+    {
+        return instance.getOrders(database.randomCustomer(), 0, 10);
+    }
+
+    @Benchmark
+    public long streamOrdersFromCustomer()
+    {
+        try (Stream<Order> orders = instance.streamOrders(database.randomCustomer(), 10)) {
+            return orders.count();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares listing the orders of a customer using {@link Repository#getOrderSummaries(Customer)}, with listing the
+ * same information from the order entities. The allocation of each path is reported by the {@code gc} profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderSummaryBenchmark
+{
+
+    @Param({"facade", "transactional"})
+    public String repository;
+
+    @Param({"10", "500"})
+    public int orders;
+
+    private BenchmarkDatabase database;
+    private Repository        instance;
+    private Customer          customer;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(1000);
+        try (TransactionalRepository repository = new TransactionalRepository(database.getEntityManagerFactory())) {
+            customer = repository.createCustomer("Summarized", "summarized@example.com");
+            for (int x = 0; x < orders; x++) {
+                List<OrderLine> lines = new ArrayList<>();
+                for (int y = 0; y < BenchmarkDatabase.LINES_PER_ORDER; y++)
+                    lines.add(new OrderLine(y + 1, database.randomItem()));
+                repository.createOrder(customer, lines);
+            }
+        }
+
+        instance = database.createRepository(repository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (instance instanceof TransactionalRepository)
+            ((TransactionalRepository) instance).close();
+        database.close();
+    }
+
+    @Benchmark
+    public List<OrderSummary> summaries()
+    {
+        return instance.getOrderSummaries(customer);
+    }
+
+    /**
+     * Builds the same summaries from the order entities and their lines. The customer of the orders is lazy, so the
+     * customer that was queried for is used instead.
+     */
+    @Benchmark
+    public List<OrderSummary> entities()
+    {
+        List<Order>        orders    = instance.getOrders(customer, OrderFetchPlan.LINES);
+        List<OrderSummary> summaries = new ArrayList<>(orders.size());
+        for (Order order : orders)
+            summaries.add(new OrderSummary(order.getId(),
+                                           customer.getId(),
+                                           customer.getName(),
+                                           order.getLines().size(),
+                                           order.getTotal()));
+
+        return summaries;
+    }
+}
@@ -0,0 +1,86 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares computing the revenue of each item type by looping over the order entities to the same computation using
+ * a {@link SalesSnapshot}, and measures loading and aggregating the snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SalesBenchmark
+{
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private SalesSnapshot     snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(rows);
+        snapshot = SalesSnapshot.load(database.getEntityManagerFactory());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        database.close();
+    }
+
+    @Benchmark
+    public Map<Long, Long> revenueByItemFromEntities()
+    {
+        Map<Long, Long> revenue = new HashMap<>();
+        try (TransactionalRepository repository = new TransactionalRepository(database.getEntityManagerFactory(),
+                                                                              TransactionStrategy.READ_ONLY)) {
+            for (Order order : repository.getOrders())
+                for (OrderLine line : order.getLines())
+                    revenue.merge(line.getItem().getId(), line.getQuantity() * line.getItem().getPrice(), Long::sum);
+        }
+
+        return revenue;
+    }
+
+    @Benchmark
+    public SalesGroups revenueByItem()
+    {
+        return snapshot.group(SalesSnapshot.Dimension.ITEM, SalesSnapshot.Measure.REVENUE);
+    }
+
+    @Benchmark
+    public SalesGroups topCustomersByRevenue()
+    {
+        return snapshot.top(SalesSnapshot.Dimension.CUSTOMER, SalesSnapshot.Measure.REVENUE, 10);
+    }
+
+    @Benchmark
+    public long[] quantityHistogram()
+    {
+        return snapshot.quantityHistogram(10);
+    }
+
+    @Benchmark
+    public SalesSnapshot load()
+    {
+        return SalesSnapshot.load(database.getEntityManagerFactory());
+    }
+
+    @Benchmark
+    public SalesSnapshot refresh()
+    {
+        return snapshot.refresh();
+    }
+}
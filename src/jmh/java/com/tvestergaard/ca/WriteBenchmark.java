@@ -0,0 +1,117 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the {@link Repository} operations that write rows, using both the pooled identifier
+ * generator and {@code IDENTITY} columns. Each operation is committed, also when the operation is performed using the
+ * long-lived {@link TransactionalRepository}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark
+{
+
+    @Param({"facade", "transactional"})
+    public String repository;
+
+    @Param({BenchmarkDatabase.POOLED, BenchmarkDatabase.IDENTITY})
+    public String persistenceUnit;
+
+    @Param({"1", "10", "50"})
+    public int lines;
+
+    private BenchmarkDatabase database;
+    private Repository        instance;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        database = new BenchmarkDatabase(persistenceUnit, 1000);
+    }
+
+    /**
+     * Creates the repository before each iteration, so that the long-lived {@link TransactionalRepository} does not
+     * accumulate the entities created during the entire trial.
+     */
+    @Setup(Level.Iteration)
+    public void createRepository()
+    {
+        instance = database.createRepository(repository);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeRepository()
+    {
+        if (instance instanceof TransactionalRepository)
+            ((TransactionalRepository) instance).close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        database.close();
+    }
+
+    @Benchmark
+    public Customer createCustomer()
+    {
+        return commit(instance.createCustomer("Name", "Email"));
+    }
+
+    @Benchmark
+    public ItemType createItemType()
+    {
+        return commit(instance.createItemType("Name", "Description", 100));
+    }
+
+    @Benchmark
+    public Order createOrder()
+    {
+        return commit(instance.createOrder(database.randomCustomer()));
+    }
+
+    @Benchmark
+    public Order createOrderWithLines()
+    {
+        List<OrderLine> orderLines = new ArrayList<>(lines);
+        for (int x = 0; x < lines; x++)
+            orderLines.add(new OrderLine(x + 1, database.randomItem()));
+
+        return commit(instance.createOrder(database.randomCustomer(), orderLines));
+    }
+
+    @Benchmark
+    public Order createOrderLines()
+    {
+        Order order = instance.createOrder(database.randomCustomer());
+        for (int x = 0; x < lines; x++)
+            instance.createOrderLine(order, x + 1, database.randomItem());
+
+        return commit(order);
+    }
+
+    /**
+     * Commits the transaction of the long-lived {@link TransactionalRepository}. The {@link Facade} commits each
+     * operation itself.
+     */
+    private <T> T commit(T result)
+    {
+        if (instance instanceof TransactionalRepository)
+            ((TransactionalRepository) instance).commit().begin();
+
+        return result;
+    }
+}
@@ -0,0 +1,510 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous counterpart to {@link Facade}. Every operation is performed on a dedicated executor, and returns a
+ * {@code CompletableFuture} that is completed with the result of the operation. The executor has a bounded number of
+ * threads and a bounded queue. When the queue is full, operations are rejected, and the returned future is completed
+ * exceptionally with a {@code RejectedExecutionException}. Callers are never blocked, so the repository can be used
+ * from any kind of thread.
+ * <p>
+ * The stream operations of {@link Repository} are not available, since the returned streams hold a connection until
+ * they are closed.
+ */
+public class AsyncRepository implements AutoCloseable
+{
+
+    /**
+     * The repository that operations are delegated to.
+     */
+    private final Repository repository;
+
+    /**
+     * The executor that operations are performed on.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The number of operations rejected because the queue was full.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a new {@link AsyncRepository}.
+     *
+     * @param repository    The repository that operations are delegated to.
+     * @param threads       The number of threads performing operations. This should not exceed the number of
+     *                      connections available to the repository.
+     * @param queueCapacity The maximum number of operations waiting for a thread, before operations are rejected.
+     */
+    public AsyncRepository(Repository repository, int threads, int queueCapacity)
+    {
+        this.repository = repository;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                                               new ArrayBlockingQueue<>(queueCapacity),
+                                               new RepositoryThreadFactory(),
+                                               new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Creates a new {@link AsyncRepository}, where the number of threads matches the maximum number of connections in
+     * the {@link ConnectionPool} of the provided {@link Facade}.
+     *
+     * @param facade        The facade that operations are delegated to. The facade must have been created with a
+     *                      {@link ConnectionPool}.
+     * @param queueCapacity The maximum number of operations waiting for a thread, before operations are rejected.
+     */
+    public AsyncRepository(Facade facade, int queueCapacity)
+    {
+        this(facade, maximumConnections(facade), queueCapacity);
+    }
+
+    /**
+     * Returns the maximum number of connections in the {@link ConnectionPool} of the provided {@link Facade}.
+     *
+     * @param facade The facade to return the maximum number of connections of.
+     * @return The maximum number of connections in the {@link ConnectionPool} of the provided {@link Facade}.
+     */
+    private static int maximumConnections(Facade facade)
+    {
+        ConnectionPool connectionPool = facade.getConnectionPool();
+        if (connectionPool == null)
+            throw new IllegalArgumentException("The Facade must be created with a ConnectionPool.");
+
+        return connectionPool.getMaximumConnections();
+    }
+
+    /**
+     * Creates a new customer with the provided name and email.
+     *
+     * @param name  The name of the customer to create.
+     * @param email The email of the customer to create.
+     * @return A future completed with the newly created customer entity.
+     */
+    public CompletableFuture<Customer> createCustomer(String name, String email)
+    {
+        return submit(() -> repository.createCustomer(name, email));
+    }
+
+    /**
+     * Finds the customer with the provided id.
+     *
+     * @param id The id of the customer to find.
+     * @return A future completed with the customer with the provided id, {@code null} when no such customer exists.
+     */
+    public CompletableFuture<Customer> findCustomer(long id)
+    {
+        return submit(() -> repository.findCustomer(id));
+    }
+
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return A future completed with the customers with the provided ids in the order of the ids, together with the
+     * ids that were not found.
+     */
+    public CompletableFuture<EntityLookup<Customer>> findCustomers(long[] ids)
+    {
+        return submit(() -> repository.findCustomers(ids));
+    }
+
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return A future completed with the customers with the provided ids in the order of the ids, together with the
+     * ids that were not found.
+     */
+    public CompletableFuture<EntityLookup<Customer>> findCustomers(Collection<Long> ids)
+    {
+        return submit(() -> repository.findCustomers(ids));
+    }
+
+    /**
+     * Returns a complete list of customers.
+     *
+     * @return A future completed with the complete list of customers.
+     */
+    public CompletableFuture<List<Customer>> getCustomers()
+    {
+        return submit(() -> repository.getCustomers());
+    }
+
+    /**
+     * Returns the customers with an id greater than the provided id, sorted by their id. The last id of the returned
+     * page is used to retrieve the next page.
+     *
+     * @param after The id after which customers are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of customers to return.
+     * @return A future completed with the page of customers.
+     */
+    public CompletableFuture<List<Customer>> getCustomers(long after, int limit)
+    {
+        return submit(() -> repository.getCustomers(after, limit));
+    }
+
+    /**
+     * Creates a new order from the provided arguments.
+     *
+     * @param customer The customer who owns the order.
+     * @return A future completed with the newly created order entity.
+     */
+    public CompletableFuture<Order> createOrder(Customer customer)
+    {
+        return submit(() -> repository.createOrder(customer));
+    }
+
+    /**
+     * Creates a new order containing the provided lines. The order and all of its lines are written together.
+     *
+     * @param customer The customer who owns the order.
+     * @param lines    The lines to include in the order. Each line is created using
+     *                 {@link OrderLine#OrderLine(long, ItemType)}, and must not have been persisted already.
+     * @return A future completed with the newly created order entity.
+     */
+    public CompletableFuture<Order> createOrder(Customer customer, List<OrderLine> lines)
+    {
+        return submit(() -> repository.createOrder(customer, lines));
+    }
+
+    /**
+     * Returns the order with the provided id.
+     *
+     * @param id The id of the order to return.
+     * @return A future completed with the order with the provided id, {@code null} when no such order exists.
+     */
+    public CompletableFuture<Order> getOrder(long id)
+    {
+        return submit(() -> repository.getOrder(id));
+    }
+
+    /**
+     * Returns the order with the provided id, together with the associations described by the provided fetch plan.
+     *
+     * @param id   The id of the order to return.
+     * @param plan The associations to load together with the order.
+     * @return A future completed with the order with the provided id, {@code null} when no such order exists.
+     */
+    public CompletableFuture<Order> getOrder(long id, OrderFetchPlan plan)
+    {
+        return submit(() -> repository.getOrder(id, plan));
+    }
+
+    /**
+     * Returns all the orders in the repository.
+     *
+     * @return A future completed with the complete list of the orders in the repository.
+     */
+    public CompletableFuture<List<Order>> getOrders()
+    {
+        return submit(() -> repository.getOrders());
+    }
+
+    /**
+     * Returns all the orders in the repository, together with the associations described by the provided fetch plan.
+     *
+     * @param plan The associations to load together with the orders.
+     * @return A future completed with the complete list of the orders in the repository.
+     */
+    public CompletableFuture<List<Order>> getOrders(OrderFetchPlan plan)
+    {
+        return submit(() -> repository.getOrders(plan));
+    }
+
+    /**
+     * Returns the orders with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of orders to return.
+     * @return A future completed with the page of orders.
+     */
+    public CompletableFuture<List<Order>> getOrders(long after, int limit)
+    {
+        return submit(() -> repository.getOrders(after, limit));
+    }
+
+    /**
+     * Returns all the orders for the provided customers.
+     *
+     * @param customer The customer to return the order of.
+     * @return A future completed with the complete list of the orders belonging to the provided customer.
+     */
+    public CompletableFuture<List<Order>> getOrders(Customer customer)
+    {
+        return submit(() -> repository.getOrders(customer));
+    }
+
+    /**
+     * Returns all the orders for the provided customers, together with the associations described by the provided
+     * fetch plan.
+     *
+     * @param customer The customer to return the order of.
+     * @param plan     The associations to load together with the orders.
+     * @return A future completed with the complete list of the orders belonging to the provided customer.
+     */
+    public CompletableFuture<List<Order>> getOrders(Customer customer, OrderFetchPlan plan)
+    {
+        return submit(() -> repository.getOrders(customer, plan));
+    }
+
+    /**
+     * Returns the orders for the provided customer with an id greater than the provided id, sorted by their id. The
+     * last id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the orders of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of orders to return.
+     * @return A future completed with the page of orders belonging to the provided customer.
+     */
+    public CompletableFuture<List<Order>> getOrders(Customer customer, long after, int limit)
+    {
+        return submit(() -> repository.getOrders(customer, after, limit));
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer, sorted by the id of the order.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @return A future completed with the summaries of the orders belonging to the provided customer.
+     */
+    public CompletableFuture<List<OrderSummary>> getOrderSummaries(Customer customer)
+    {
+        return submit(() -> repository.getOrderSummaries(customer));
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer with an id greater than the provided id,
+     * sorted by the id of the order.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of summaries to return.
+     * @return A future completed with the page of order summaries.
+     */
+    public CompletableFuture<List<OrderSummary>> getOrderSummaries(Customer customer, long after, int limit)
+    {
+        return submit(() -> repository.getOrderSummaries(customer, after, limit));
+    }
+
+    /**
+     * Creates a new {@code OrderLine} and adds it to the provided {@code Order}.
+     *
+     * @param order    The order to add the newly created {@code OrderLine} to.
+     * @param quantity The number of the provided item to include in the {@code OrderLine}.
+     * @param itemType The {@code ItemType} to place in the {@code OrderLine}.
+     * @return A future completed with the newly created {@code OrderLine} entity.
+     */
+    public CompletableFuture<OrderLine> createOrderLine(Order order, long quantity, ItemType itemType)
+    {
+        return submit(() -> repository.createOrderLine(order, quantity, itemType));
+    }
+
+    /**
+     * Adds the provided lines to the provided {@code Order}, writing them in a single transaction.
+     *
+     * @param order The order to add the lines to. The order must have been persisted already.
+     * @param lines The lines to add, which must not have been persisted already.
+     * @return A future completed with the provided lines, which have been assigned their ids.
+     */
+    public CompletableFuture<List<OrderLine>> createOrderLines(Order order, List<OrderLine> lines)
+    {
+        return submit(() -> repository.createOrderLines(order, lines));
+    }
+
+    /**
+     * Creates a new {@code ItemType}.
+     *
+     * @param name        The name of the {@code ItemType} to create.
+     * @param description The description of the {@code ItemType} to create.
+     * @param price       The price of the {@code ItemType} to create.
+     * @return A future completed with the newly created {@code ItemType} entity.
+     */
+    public CompletableFuture<ItemType> createItemType(String name, String description, long price)
+    {
+        return submit(() -> repository.createItemType(name, description, price));
+    }
+
+    /**
+     * Returns the total price of the provided {@code Order}.
+     *
+     * @param order The order to find the total of.
+     * @return A future completed with the total price of the provided {@code Order.}
+     */
+    public CompletableFuture<Long> getTotal(Order order)
+    {
+        return submit(() -> repository.getTotal(order));
+    }
+
+    /**
+     * Returns the totals of the provided orders.
+     *
+     * @param orders The orders to find the totals of.
+     * @return A future completed with the totals of the provided orders, mapped by the id of the order.
+     */
+    public CompletableFuture<OrderTotals> getTotals(Collection<Order> orders)
+    {
+        return submit(() -> repository.getTotals(orders));
+    }
+
+    /**
+     * Returns the totals of the orders belonging to the provided customer.
+     *
+     * @param customer The customer to find the order totals of.
+     * @return A future completed with the totals of the orders belonging to the provided customer, mapped by the id of the order.
+     */
+    public CompletableFuture<OrderTotals> getTotals(Customer customer)
+    {
+        return submit(() -> repository.getTotals(customer));
+    }
+
+    /**
+     * Returns the {@code ItemType} with the provided id.
+     *
+     * @param id The id of the {@code ItemType} to return.
+     * @return A future completed with the {@code ItemType} with the provided id, {@code null} when no such {@code ItemType} exists.
+     */
+    public CompletableFuture<ItemType> getItem(long id)
+    {
+        return submit(() -> repository.getItem(id));
+    }
+
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return A future completed with the items with the provided ids in the order of the ids, together with the ids
+     * that were not found.
+     */
+    public CompletableFuture<EntityLookup<ItemType>> getItems(long[] ids)
+    {
+        return submit(() -> repository.getItems(ids));
+    }
+
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return A future completed with the items with the provided ids in the order of the ids, together with the ids
+     * that were not found.
+     */
+    public CompletableFuture<EntityLookup<ItemType>> getItems(Collection<Long> ids)
+    {
+        return submit(() -> repository.getItems(ids));
+    }
+
+    /**
+     * Returns all the items in the repository.
+     *
+     * @return A future completed with the complete list of the items in the repository.
+     */
+    public CompletableFuture<List<ItemType>> getItems()
+    {
+        return submit(() -> repository.getItems());
+    }
+
+    /**
+     * Returns the items with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which items are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of items to return.
+     * @return A future completed with the page of items.
+     */
+    public CompletableFuture<List<ItemType>> getItems(long after, int limit)
+    {
+        return submit(() -> repository.getItems(after, limit));
+    }
+
+    /**
+     * Returns the number of operations currently waiting for a thread.
+     *
+     * @return The number of operations currently waiting for a thread.
+     */
+    public int getQueuedCount()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the number of operations currently being performed.
+     *
+     * @return The number of operations currently being performed.
+     */
+    public int getActiveCount()
+    {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of operations rejected because the queue was full.
+     *
+     * @return The number of operations rejected because the queue was full.
+     */
+    public long getRejectedCount()
+    {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting new operations, and waits for the accepted operations to complete.
+     */
+    @Override public void close()
+    {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Performs the provided operation on the executor.
+     *
+     * @param operation The operation to perform.
+     * @param <T>       The type of the result of the operation.
+     * @return The future completed with the result of the operation, or completed exceptionally with a
+     * {@code RejectedExecutionException} when the queue is full.
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> operation)
+    {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * Creates the named threads performing the operations of the repository.
+     */
+    private static class RepositoryThreadFactory implements ThreadFactory
+    {
+
+        /**
+         * The number of threads created by the factory.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override public Thread newThread(Runnable runnable)
+        {
+            return new Thread(runnable, "async-repository-" + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Imports large numbers of customers, item types and orders from {@link ImportFormat#CSV} or
+ * {@link ImportFormat#JSON_LINES} input. The input is read on the calling thread, divided into chunks, and written by
+ * several worker threads. Each worker writes through its own {@code StatelessSession}, and therefore its own
+ * connection, so that no persistence context is kept and the inserts are sent to the database in JDBC batches. Each
+ * chunk is committed in a single transaction.
+ * <p>
+ * Rows that cannot be imported do not abort the import. When a chunk fails, its rows are written again one at a
+ * time, and the rows that still fail are reported in the resulting {@link ImportReport}.
+ * <p>
+ * The fields of each format are:
+ * <ul>
+ * <li>customers: {@code name}, {@code email}</li>
+ * <li>item types: {@code name}, {@code description}, {@code price}</li>
+ * <li>orders: {@code order}, {@code customer}, {@code item}, {@code quantity}. Each row is a line of an order. The
+ * {@code order} field identifies the order within the input, and the lines of an order must be consecutive. The
+ * {@code customer} and {@code item} fields are the ids of existing customers and item types.</li>
+ * </ul>
+ */
+public class BulkImporter
+{
+
+    /**
+     * The number of rows committed in each transaction, when no chunk size is provided.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /**
+     * Marks the end of the input for the workers.
+     */
+    private static final List<List<ImportRecord>> END = Collections.emptyList();
+
+    /**
+     * The {@code SessionFactory} the rows are written through.
+     */
+    private final SessionFactory sessionFactory;
+
+    /**
+     * The number of threads writing rows.
+     */
+    private final int workers;
+
+    /**
+     * The number of rows committed in each transaction.
+     */
+    private final int chunkSize;
+
+    /**
+     * Creates a new {@link BulkImporter}.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} the rows are written through.
+     * @param workers              The number of threads writing rows. Each thread holds a connection while the
+     *                             import is in progress.
+     * @param chunkSize            The number of rows committed in each transaction. This should be a multiple of
+     *                             {@code hibernate.jdbc.batch_size}.
+     */
+    public BulkImporter(EntityManagerFactory entityManagerFactory, int workers, int chunkSize)
+    {
+        if (workers < 1)
+            throw new IllegalArgumentException("The number of workers must be positive.");
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("The chunk size must be positive.");
+
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Creates a new {@link BulkImporter} committing {@link #DEFAULT_CHUNK_SIZE} rows in each transaction.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} the rows are written through.
+     * @param workers              The number of threads writing rows.
+     */
+    public BulkImporter(EntityManagerFactory entityManagerFactory, int workers)
+    {
+        this(entityManagerFactory, workers, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Imports the customers of the provided input.
+     *
+     * @param input    The input to import customers from. The input is not closed.
+     * @param format   The format of the input.
+     * @param progress Receives a report after each committed chunk. The reports are delivered on the worker threads,
+     *                 and exceptions thrown while receiving them are ignored.
+     * @return The report of the completed import.
+     */
+    public ImportReport importCustomers(Reader input, ImportFormat format, Consumer<ImportReport> progress)
+    {
+        return run(input, format, false, progress, (session, groups) -> {
+            for (List<ImportRecord> rows : groups)
+                for (ImportRecord row : rows)
+                    session.insert(new Customer(row.getString("name"), row.getString("email")));
+        });
+    }
+
+    /**
+     * Imports the customers of the provided input.
+     *
+     * @param input  The input to import customers from. The input is not closed.
+     * @param format The format of the input.
+     * @return The report of the completed import.
+     */
+    public ImportReport importCustomers(Reader input, ImportFormat format)
+    {
+        return importCustomers(input, format, report -> {});
+    }
+
+    /**
+     * Imports the item types of the provided input. The cached results of the {@code ItemType} queries are evicted
+     * when the import completes, since the inserts bypass the caches.
+     *
+     * @param input    The input to import item types from. The input is not closed.
+     * @param format   The format of the input.
+     * @param progress Receives a report after each committed chunk. The reports are delivered on the worker threads,
+     *                 and exceptions thrown while receiving them are ignored.
+     * @return The report of the completed import.
+     */
+    public ImportReport importItems(Reader input, ImportFormat format, Consumer<ImportReport> progress)
+    {
+        try {
+            return run(input, format, false, progress, (session, groups) -> {
+                for (List<ImportRecord> rows : groups)
+                    for (ImportRecord row : rows)
+                        session.insert(new ItemType(row.getString("name"),
+                                                    row.getString("description"),
+                                                    row.getLong("price")));
+            });
+        } finally {
+            sessionFactory.getCache().evictQueryRegion(CacheStatistics.ITEM_TYPE_QUERY_REGION);
+        }
+    }
+
+    /**
+     * Imports the item types of the provided input.
+     *
+     * @param input  The input to import item types from. The input is not closed.
+     * @param format The format of the input.
+     * @return The report of the completed import.
+     */
+    public ImportReport importItems(Reader input, ImportFormat format)
+    {
+        return importItems(input, format, report -> {});
+    }
+
+    /**
+     * Imports the orders of the provided input. The lines of an order are written in the same transaction, and are
+     * rejected together when one of them cannot be imported. The orders of a chunk are inserted before the lines of
+     * the chunk, so that the inserts of each table are batched across orders. The totals of the orders are then
+     * computed by the database using a single update for the chunk, since the prices of the referenced items are not
+     * loaded.
+     *
+     * @param input    The input to import order lines from. The input is not closed.
+     * @param format   The format of the input.
+     * @param progress Receives a report after each committed chunk. The reports are delivered on the worker threads,
+     *                 and exceptions thrown while receiving them are ignored.
+     * @return The report of the completed import.
+     */
+    public ImportReport importOrders(Reader input, ImportFormat format, Consumer<ImportReport> progress)
+    {
+        return run(input, format, true, progress, (session, groups) -> {
+            List<OrderLine> lines  = new ArrayList<>();
+            List<Order>     orders = new ArrayList<>(groups.size());
+            for (List<ImportRecord> rows : groups) {
+                long  customer = rows.get(0).getLong("customer");
+                Order order    = new Order(reference(new Customer(), customer));
+                for (ImportRecord row : rows) {
+                    if (row.getLong("customer") != customer)
+                        throw new IllegalArgumentException("The lines of order " + row.getString("order") +
+                                                           " belong to different customers");
+
+                    OrderLine line = new OrderLine(row.getLong("quantity"),
+                                                   reference(new ItemType(), row.getLong("item")));
+                    line.setOrder(order);
+                    lines.add(line);
+                }
+
+                orders.add(order);
+            }
+
+            List<Long> ids = new ArrayList<>(orders.size());
+            for (Order order : orders) {
+                session.insert(order);
+                ids.add(order.getId());
+            }
+            for (OrderLine line : lines)
+                session.insert(line);
+
+            session.getNamedQuery("Order.rebuildTotals")
+                   .setParameterList("ids", ids)
+                   .executeUpdate();
+        });
+    }
+
+    /**
+     * Imports the orders of the provided input.
+     *
+     * @param input  The input to import order lines from. The input is not closed.
+     * @param format The format of the input.
+     * @return The report of the completed import.
+     */
+    public ImportReport importOrders(Reader input, ImportFormat format)
+    {
+        return importOrders(input, format, report -> {});
+    }
+
+    /**
+     * Returns the provided entity with the provided id, so that it can be used to reference an existing row without
+     * loading it.
+     */
+    private static Customer reference(Customer customer, long id)
+    {
+        customer.setId(id);
+        return customer;
+    }
+
+    /**
+     * Returns the provided entity with the provided id, so that it can be used to reference an existing row without
+     * loading it.
+     */
+    private static ItemType reference(ItemType item, long id)
+    {
+        item.setId(id);
+        return item;
+    }
+
+    /**
+     * Reads the provided input, and writes its rows using the worker threads. The worker threads are stopped when the
+     * method returns, also when reading the input fails.
+     *
+     * @param input    The input to read rows from.
+     * @param format   The format of the input.
+     * @param grouped  Whether consecutive rows with the same {@code order} field must be written together.
+     * @param progress Receives a report after each committed chunk.
+     * @param writer   Writes the groups of rows of a chunk.
+     * @return The report of the import, which is only completed when every row has been read and written. The report
+     * is not completed when the calling thread is interrupted.
+     * @throws java.io.UncheckedIOException When the input cannot be read.
+     * @throws IllegalStateException        When every worker thread has stopped because of an unexpected exception.
+     */
+    private ImportReport run(Reader input,
+                             ImportFormat format,
+                             boolean grouped,
+                             Consumer<ImportReport> progress,
+                             RowWriter writer)
+    {
+        Progress                                state  = new Progress(workers);
+        BlockingQueue<List<List<ImportRecord>>> queue  = new ArrayBlockingQueue<>(workers * 2);
+        ExecutorService                         pool   = Executors.newFixedThreadPool(workers, new WorkerFactory());
+        ImportRecordReader                      reader = new ImportRecordReader(new BufferedReader(input), format);
+
+        for (int x = 0; x < workers; x++)
+            pool.execute(new Worker(queue, writer, state, progress));
+
+        boolean completed = false;
+        try {
+            List<List<ImportRecord>> chunk     = new ArrayList<>();
+            List<ImportRecord>       group     = new ArrayList<>();
+            int                      chunkRows = 0;
+            while (true) {
+                ImportRecord row;
+                try {
+                    row = reader.next();
+                } catch (IllegalArgumentException e) {
+                    state.read.increment();
+                    state.fail(reader.getLine(), 1, e.getMessage());
+                    continue;
+                }
+
+                if (row == null)
+                    break;
+
+                state.read.increment();
+                if (!group.isEmpty() && (!grouped || !sameGroup(group.get(0), row))) {
+                    chunk.add(group);
+                    chunkRows += group.size();
+                    group = new ArrayList<>();
+                    if (chunkRows >= chunkSize) {
+                        put(queue, chunk, state);
+                        chunk = new ArrayList<>();
+                        chunkRows = 0;
+                    }
+                }
+
+                group.add(row);
+            }
+
+            if (!group.isEmpty())
+                chunk.add(group);
+            if (!chunk.isEmpty())
+                put(queue, chunk, state);
+            for (int x = 0; x < workers; x++)
+                put(queue, END, state);
+
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            completed = state.workerFailure.get() == null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!completed)
+                pool.shutdownNow();
+        }
+
+        return state.report(completed);
+    }
+
+    /**
+     * Adds the provided chunk to the queue, waiting while the queue is full. Stops waiting when every worker has
+     * stopped, since the chunk would then never be taken.
+     *
+     * @param queue The queue to add the chunk to.
+     * @param chunk The chunk to add.
+     * @param state The progress of the import.
+     * @throws InterruptedException  When the calling thread is interrupted while waiting.
+     * @throws IllegalStateException When every worker has stopped because of an unexpected exception.
+     */
+    private static void put(BlockingQueue<List<List<ImportRecord>>> queue, List<List<ImportRecord>> chunk,
+                            Progress state) throws InterruptedException
+    {
+        while (!queue.offer(chunk, 100, TimeUnit.MILLISECONDS))
+            if (state.running.get() == 0)
+                throw new IllegalStateException("Every import worker has stopped.", state.workerFailure.get());
+    }
+
+    /**
+     * Returns whether the provided rows are lines of the same order.
+     *
+     * @param first The first line of the current order.
+     * @param row   The row to compare.
+     * @return Whether the provided rows are lines of the same order.
+     */
+    private static boolean sameGroup(ImportRecord first, ImportRecord row)
+    {
+        try {
+            return first.getString("order").equals(row.getString("order"));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the message of the innermost cause of the provided exception.
+     *
+     * @param e The exception.
+     * @return The message of the innermost cause of the provided exception.
+     */
+    private static String rootMessage(Throwable e)
+    {
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause)
+            cause = cause.getCause();
+
+        return cause.getMessage() == null ? cause.toString() : cause.getMessage();
+    }
+
+    /**
+     * Writes groups of rows using the provided session. The groups are written in a single transaction.
+     */
+    @FunctionalInterface
+    private interface RowWriter
+    {
+
+        /**
+         * Writes the provided groups of rows.
+         *
+         * @param session The session to write the rows through.
+         * @param groups  The groups of rows to write.
+         */
+        void write(StatelessSession session, List<List<ImportRecord>> groups);
+    }
+
+    /**
+     * Writes the chunks taken from the queue, until the end of the input is reached.
+     */
+    private class Worker implements Runnable
+    {
+
+        /**
+         * The queue to take chunks from.
+         */
+        private final BlockingQueue<List<List<ImportRecord>>> queue;
+
+        /**
+         * Writes the groups of rows of a chunk.
+         */
+        private final RowWriter writer;
+
+        /**
+         * The progress of the import.
+         */
+        private final Progress state;
+
+        /**
+         * Receives a report after each committed chunk.
+         */
+        private final Consumer<ImportReport> progress;
+
+        /**
+         * The session of the worker, {@code null} when no session is open.
+         */
+        private StatelessSession session;
+
+        Worker(BlockingQueue<List<List<ImportRecord>>> queue,
+               RowWriter writer,
+               Progress state,
+               Consumer<ImportReport> progress)
+        {
+            this.queue = queue;
+            this.writer = writer;
+            this.state = state;
+            this.progress = progress;
+        }
+
+        @Override public void run()
+        {
+            try {
+                List<List<ImportRecord>> chunk = queue.take();
+                while (chunk != END) {
+                    write(chunk);
+                    report();
+                    chunk = queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error e) {
+                state.workerFailure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                state.running.decrementAndGet();
+                close();
+            }
+        }
+
+        /**
+         * Delivers a report of the progress. Exceptions thrown while receiving the report are ignored, so that the
+         * worker keeps taking chunks from the queue.
+         */
+        private void report()
+        {
+            try {
+                progress.accept(state.report(false));
+            } catch (RuntimeException e) {
+                // The import continues regardless
+            }
+        }
+
+        /**
+         * Writes the provided chunk in a single transaction. When the chunk fails, each group of the chunk is written
+         * in its own transaction, so that only the failing groups are rejected.
+         *
+         * @param chunk The chunk to write.
+         */
+        private void write(List<List<ImportRecord>> chunk)
+        {
+            try {
+                commit(chunk);
+                for (List<ImportRecord> group : chunk)
+                    state.imported.add(group.size());
+            } catch (RuntimeException e) {
+                close();
+                for (List<ImportRecord> group : chunk) {
+                    try {
+                        commit(Collections.singletonList(group));
+                        state.imported.add(group.size());
+                    } catch (RuntimeException groupException) {
+                        close();
+                        state.fail(group.get(0).getLine(), group.size(), rootMessage(groupException));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the provided groups in a single transaction.
+         *
+         * @param groups The groups to write.
+         */
+        private void commit(List<List<ImportRecord>> groups)
+        {
+            if (session == null)
+                session = sessionFactory.openStatelessSession();
+
+            Transaction transaction = session.beginTransaction();
+            try {
+                writer.write(session, groups);
+                transaction.commit();
+            } catch (RuntimeException e) {
+                try {
+                    if (transaction.isActive())
+                        transaction.rollback();
+                } catch (RuntimeException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Closes the session of the worker, so that a failed batch is not reused.
+         */
+        private void close()
+        {
+            if (session == null)
+                return;
+
+            try {
+                session.close();
+            } catch (RuntimeException e) {
+                // The connection is discarded regardless
+            }
+
+            session = null;
+        }
+    }
+
+    /**
+     * The progress of a single import, updated concurrently by the workers.
+     */
+    private static class Progress
+    {
+
+        /**
+         * The time the import started, in nanoseconds.
+         */
+        private final long start = System.nanoTime();
+
+        /**
+         * The number of rows read from the input.
+         */
+        private final LongAdder read = new LongAdder();
+
+        /**
+         * The number of rows written to the database.
+         */
+        private final LongAdder imported = new LongAdder();
+
+        /**
+         * The number of rows that could not be imported.
+         */
+        private final LongAdder failed = new LongAdder();
+
+        /**
+         * The rows that could not be imported.
+         */
+        private final ConcurrentLinkedQueue<ImportFailure> failures = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The number of workers that have not stopped.
+         */
+        private final AtomicInteger running;
+
+        /**
+         * The first unexpected exception that stopped a worker, {@code null} when no worker has failed.
+         */
+        private final AtomicReference<Throwable> workerFailure = new AtomicReference<>();
+
+        /**
+         * Creates the progress of a new import.
+         *
+         * @param workers The number of workers writing the rows.
+         */
+        Progress(int workers)
+        {
+            this.running = new AtomicInteger(workers);
+        }
+
+        /**
+         * Records rows that could not be imported.
+         *
+         * @param line    The line of the first row.
+         * @param rows    The number of rows.
+         * @param message The reason the rows could not be imported.
+         */
+        void fail(long line, int rows, String message)
+        {
+            failed.add(rows);
+            failures.add(new ImportFailure(line, rows, message));
+        }
+
+        /**
+         * Returns a snapshot of the progress.
+         *
+         * @param completed Whether the import has completed.
+         * @return The snapshot of the progress.
+         */
+        ImportReport report(boolean completed)
+        {
+            return new ImportReport(read.sum(),
+                                    imported.sum(),
+                                    failed.sum(),
+                                    System.nanoTime() - start,
+                                    completed,
+                                    new ArrayList<>(failures));
+        }
+    }
+
+    /**
+     * Creates the named threads writing the rows.
+     */
+    private static class WorkerFactory implements ThreadFactory
+    {
+
+        /**
+         * The number of threads created by the factory.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override public Thread newThread(Runnable runnable)
+        {
+            return new Thread(runnable, "bulk-import-" + count.incrementAndGet());
+        }
+    }
+}
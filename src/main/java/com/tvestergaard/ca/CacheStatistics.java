@@ -0,0 +1,114 @@
+package com.tvestergaard.ca;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Provides the hit, miss, put and eviction counts of the second-level and query cache regions. The hit, miss and put
+ * counts require {@code hibernate.generate_statistics} to be enabled, and the eviction counts require statistics to
+ * be enabled in the cache configuration.
+ */
+public class CacheStatistics
+{
+
+    /**
+     * The name of the cache region containing {@code ItemType} entities.
+     */
+    public static final String ITEM_TYPE_REGION = "itemType";
+
+    /**
+     * The name of the cache region containing the results of {@code ItemType} queries.
+     */
+    public static final String ITEM_TYPE_QUERY_REGION = "itemTypeQueries";
+
+    /**
+     * The statistics of the {@code EntityManagerFactory}.
+     */
+    private final Statistics statistics;
+
+    /**
+     * Creates a new {@link CacheStatistics}.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} to provide the cache statistics of.
+     */
+    public CacheStatistics(EntityManagerFactory entityManagerFactory)
+    {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * Returns the number of times an entry was found in the provided region.
+     *
+     * @param region The name of the cache region.
+     * @return The number of times an entry was found in the provided region.
+     */
+    public long getHitCount(String region)
+    {
+        return getRegionStatistics(region).getHitCount();
+    }
+
+    /**
+     * Returns the number of times an entry was not found in the provided region.
+     *
+     * @param region The name of the cache region.
+     * @return The number of times an entry was not found in the provided region.
+     */
+    public long getMissCount(String region)
+    {
+        return getRegionStatistics(region).getMissCount();
+    }
+
+    /**
+     * Returns the number of times an entry was put into the provided region.
+     *
+     * @param region The name of the cache region.
+     * @return The number of times an entry was put into the provided region.
+     */
+    public long getPutCount(String region)
+    {
+        return getRegionStatistics(region).getPutCount();
+    }
+
+    /**
+     * Returns the number of entries evicted from the provided region, because the region was full.
+     *
+     * @param region The name of the cache region.
+     * @return The number of entries evicted from the provided region.
+     */
+    public long getEvictionCount(String region)
+    {
+        try {
+            MBeanServer server    = ManagementFactory.getPlatformMBeanServer();
+            ObjectName  pattern   = new ObjectName("javax.cache:type=CacheStatistics,Cache=" + region + ",*");
+            long        evictions = 0;
+            for (ObjectName name : server.queryNames(pattern, null))
+                evictions += (Long) server.getAttribute(name, "CacheEvictions");
+
+            return evictions;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not read the eviction count of cache region " + region, e);
+        }
+    }
+
+    /**
+     * Returns the Hibernate statistics of the provided region.
+     *
+     * @param region The name of the cache region.
+     * @return The Hibernate statistics of the provided region.
+     */
+    private CacheRegionStatistics getRegionStatistics(String region)
+    {
+        CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+        if (regionStatistics == null)
+            throw new IllegalArgumentException("Unknown cache region " + region);
+
+        return regionStatistics;
+    }
+}
@@ -0,0 +1,42 @@
+package com.tvestergaard.ca;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.jcache.internal.JCacheRegionFactory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * {@code JCacheRegionFactory} that allows the cache configuration to be located on the classpath. The caching
+ * provider only accepts absolute URIs, so a {@code hibernate.javax.cache.uri} starting with {@code classpath:} is
+ * resolved to the URL of the resource before it is passed to the caching provider.
+ */
+public class ClasspathCacheRegionFactory extends JCacheRegionFactory
+{
+
+    /**
+     * The prefix of configuration URIs that are located on the classpath.
+     */
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
+    @Override protected URI getUri(Map properties)
+    {
+        Object uri = properties.get(ConfigSettings.CONFIG_URI);
+        if (uri == null || !uri.toString().startsWith(CLASSPATH_PREFIX))
+            return super.getUri(properties);
+
+        String resource = uri.toString().substring(CLASSPATH_PREFIX.length());
+        URL    url      = ClasspathCacheRegionFactory.class.getClassLoader().getResource(resource);
+        if (url == null)
+            throw new CacheException("Could not find cache configuration " + uri + " on the classpath.");
+
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            throw new CacheException("Could not create URI from " + url, e);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.tvestergaard.ca;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections, that replaces the connection provider configured in the persistence unit. The
+ * pool reports the number of active, idle and waiting connections, as well as the time spent acquiring connections.
+ */
+public class ConnectionPool implements AutoCloseable
+{
+
+    /**
+     * The pooled {@code DataSource}.
+     */
+    private final HikariDataSource dataSource;
+
+    /**
+     * The {@code EntityManagerFactory} instances created from the pool, that are closed together with the pool.
+     */
+    private final List<EntityManagerFactory> entityManagerFactories = new CopyOnWriteArrayList<>();
+
+    /**
+     * The number of connections acquired from the pool.
+     */
+    private final LongAdder acquisitions = new LongAdder();
+
+    /**
+     * The total time spent acquiring connections from the pool, in nanoseconds.
+     */
+    private final LongAdder acquisitionNanos = new LongAdder();
+
+    /**
+     * The longest time spent acquiring a single connection from the pool, in nanoseconds.
+     */
+    private final AtomicLong maxAcquisitionNanos = new AtomicLong();
+
+    /**
+     * The number of times a connection could not be acquired before the connection timeout.
+     */
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Creates a new {@link ConnectionPool}. The connections are opened immediately.
+     *
+     * @param configuration The configuration of the pool.
+     * @see ConnectionPool#configuration(String, String, String)
+     */
+    public ConnectionPool(HikariConfig configuration)
+    {
+        configuration.setMetricsTrackerFactory((poolName, poolStats) -> new AcquisitionTracker());
+        this.dataSource = new HikariDataSource(configuration);
+    }
+
+    /**
+     * Creates a pool configuration for a MySQL database. The pool holds between 2 and 10 connections. Idle
+     * connections are closed after 10 minutes, and all connections are replaced after 30 minutes. Connections held
+     * for more than a minute are reported as possible leaks. The prepared statements of each connection are cached.
+     *
+     * @param url      The JDBC url of the database.
+     * @param user     The user to connect as.
+     * @param password The password of the user to connect as.
+     * @return The resulting configuration, which can be adjusted before the pool is created.
+     */
+    public static HikariConfig configuration(String url, String user, String password)
+    {
+        HikariConfig configuration = new HikariConfig();
+        configuration.setJdbcUrl(url);
+        configuration.setUsername(user);
+        configuration.setPassword(password);
+        configuration.setMaximumPoolSize(10);
+        configuration.setMinimumIdle(2);
+        configuration.setIdleTimeout(TimeUnit.MINUTES.toMillis(10));
+        configuration.setMaxLifetime(TimeUnit.MINUTES.toMillis(30));
+        configuration.setLeakDetectionThreshold(TimeUnit.MINUTES.toMillis(1));
+        configuration.addDataSourceProperty("cachePrepStmts", "true");
+        configuration.addDataSourceProperty("prepStmtCacheSize", "250");
+        configuration.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        configuration.addDataSourceProperty("useServerPrepStmts", "true");
+
+        return configuration;
+    }
+
+    /**
+     * Creates a new {@code EntityManagerFactory} from the provided persistence unit, that acquires its connections
+     * from this pool. The {@code EntityManagerFactory} is closed when the pool is closed.
+     *
+     * @param persistenceUnit The name of the persistence unit.
+     * @return The resulting {@code EntityManagerFactory}.
+     */
+    public EntityManagerFactory createEntityManagerFactory(String persistenceUnit)
+    {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.nonJtaDataSource", dataSource);
+
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnit, properties);
+        entityManagerFactories.add(entityManagerFactory);
+
+        return entityManagerFactory;
+    }
+
+    /**
+     * Returns the pooled {@code DataSource}.
+     *
+     * @return The pooled {@code DataSource}.
+     */
+    public DataSource getDataSource()
+    {
+        return this.dataSource;
+    }
+
+    /**
+     * Returns the maximum number of connections opened by the pool.
+     *
+     * @return The maximum number of connections opened by the pool.
+     */
+    public int getMaximumConnections()
+    {
+        return dataSource.getMaximumPoolSize();
+    }
+
+    /**
+     * Returns the number of connections currently in use.
+     *
+     * @return The number of connections currently in use.
+     */
+    public int getActiveConnections()
+    {
+        return getPool().getActiveConnections();
+    }
+
+    /**
+     * Returns the number of connections currently waiting in the pool.
+     *
+     * @return The number of connections currently waiting in the pool.
+     */
+    public int getIdleConnections()
+    {
+        return getPool().getIdleConnections();
+    }
+
+    /**
+     * Returns the number of connections currently opened by the pool.
+     *
+     * @return The number of connections currently opened by the pool.
+     */
+    public int getTotalConnections()
+    {
+        return getPool().getTotalConnections();
+    }
+
+    /**
+     * Returns the number of threads currently waiting for a connection.
+     *
+     * @return The number of threads currently waiting for a connection.
+     */
+    public int getWaitingThreads()
+    {
+        return getPool().getThreadsAwaitingConnection();
+    }
+
+    /**
+     * Returns the number of connections acquired from the pool.
+     *
+     * @return The number of connections acquired from the pool.
+     */
+    public long getAcquisitionCount()
+    {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Returns the average time spent acquiring a connection from the pool.
+     *
+     * @param unit The unit of the returned time.
+     * @return The average time spent acquiring a connection from the pool, {@code 0} when no connections have been
+     * acquired.
+     */
+    public long getAverageAcquisitionTime(TimeUnit unit)
+    {
+        long count = acquisitions.sum();
+
+        return count == 0 ? 0 : unit.convert(acquisitionNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest time spent acquiring a single connection from the pool.
+     *
+     * @param unit The unit of the returned time.
+     * @return The longest time spent acquiring a single connection from the pool.
+     */
+    public long getMaxAcquisitionTime(TimeUnit unit)
+    {
+        return unit.convert(maxAcquisitionNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of times a connection could not be acquired before the connection timeout.
+     *
+     * @return The number of times a connection could not be acquired before the connection timeout.
+     */
+    public long getTimeoutCount()
+    {
+        return timeouts.sum();
+    }
+
+    /**
+     * Closes the {@code EntityManagerFactory} instances created from the pool, and then the pool and all of its
+     * connections.
+     */
+    @Override public void close()
+    {
+        for (EntityManagerFactory entityManagerFactory : entityManagerFactories)
+            if (entityManagerFactory.isOpen())
+                entityManagerFactory.close();
+
+        dataSource.close();
+    }
+
+    /**
+     * Returns the live statistics of the pool.
+     *
+     * @return The live statistics of the pool.
+     */
+    private HikariPoolMXBean getPool()
+    {
+        return dataSource.getHikariPoolMXBean();
+    }
+
+    /**
+     * Records the time spent acquiring connections from the pool.
+     */
+    private class AcquisitionTracker implements IMetricsTracker
+    {
+
+        @Override public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos)
+        {
+            acquisitions.increment();
+            acquisitionNanos.add(elapsedAcquiredNanos);
+            maxAcquisitionNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+        }
+
+        @Override public void recordConnectionTimeout()
+        {
+            timeouts.increment();
+        }
+    }
+}
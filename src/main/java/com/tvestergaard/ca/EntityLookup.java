@@ -0,0 +1,133 @@
+package com.tvestergaard.ca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of looking up entities by a list of ids. The entities are kept in the order of the requested ids,
+ * and the ids that were not found are reported separately.
+ *
+ * @param <T> The type of entity.
+ */
+public class EntityLookup<T>
+{
+
+    /**
+     * The requested ids, in the order they were requested.
+     */
+    private final long[] ids;
+
+    /**
+     * The entities, where {@code entities.get(x)} is the entity with the id {@code ids[x]}, or {@code null} when no
+     * such entity exists.
+     */
+    private final List<T> entities;
+
+    /**
+     * The requested ids that were not found, in the order they were requested.
+     */
+    private final long[] missing;
+
+    /**
+     * Creates a new {@link EntityLookup}.
+     *
+     * @param ids      The requested ids, in the order they were requested.
+     * @param entities The entities, where {@code entities.get(x)} is the entity with the id {@code ids[x]}, or
+     *                 {@code null} when no such entity exists.
+     */
+    EntityLookup(long[] ids, List<T> entities)
+    {
+        if (ids.length != entities.size())
+            throw new IllegalArgumentException("An entity or null must be provided for each id.");
+
+        long[] missing = new long[ids.length];
+        int    count   = 0;
+        for (int x = 0; x < ids.length; x++)
+            if (entities.get(x) == null)
+                missing[count++] = ids[x];
+
+        this.ids = ids.clone();
+        this.entities = Collections.unmodifiableList(new ArrayList<>(entities));
+        this.missing = Arrays.copyOf(missing, count);
+    }
+
+    /**
+     * Returns the number of requested ids.
+     *
+     * @return The number of requested ids.
+     */
+    public int size()
+    {
+        return ids.length;
+    }
+
+    /**
+     * Returns the requested id at the provided index.
+     *
+     * @param index The index of the id.
+     * @return The requested id at the provided index.
+     */
+    public long getId(int index)
+    {
+        return ids[index];
+    }
+
+    /**
+     * Returns the entity with the requested id at the provided index.
+     *
+     * @param index The index of the requested id.
+     * @return The entity with the requested id at the provided index, {@code null} when no such entity exists.
+     */
+    public T get(int index)
+    {
+        return entities.get(index);
+    }
+
+    /**
+     * Returns the entities that were found, in the order their ids were requested.
+     *
+     * @return The entities that were found, in the order their ids were requested.
+     */
+    public List<T> getFound()
+    {
+        if (missing.length == 0)
+            return entities;
+
+        List<T> found = new ArrayList<>(ids.length - missing.length);
+        for (T entity : entities)
+            if (entity != null)
+                found.add(entity);
+
+        return found;
+    }
+
+    /**
+     * Returns the requested ids that were not found.
+     *
+     * @return The requested ids that were not found, in the order they were requested.
+     */
+    public long[] getMissing()
+    {
+        return missing.clone();
+    }
+
+    /**
+     * Checks if an entity was found for each of the requested ids.
+     *
+     * @return {@code true} if an entity was found for each of the requested ids.
+     */
+    public boolean isComplete()
+    {
+        return missing.length == 0;
+    }
+
+    @Override public String toString()
+    {
+        return "EntityLookup{" +
+               "ids=" + Arrays.toString(ids) +
+               ", missing=" + Arrays.toString(missing) +
+               '}';
+    }
+}
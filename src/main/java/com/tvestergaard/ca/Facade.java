@@ -5,17 +5,88 @@ import com.tvestergaard.ca.entities.ItemType;
 import com.tvestergaard.ca.entities.Order;
 import com.tvestergaard.ca.entities.OrderLine;
 
+import org.hibernate.Hibernate;
+
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityNotFoundException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.RollbackException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+/**
+ * Repository implementation that performs each operation in its own transaction. Write operations are performed on
+ * the primary {@code EntityManagerFactory}. Read operations are distributed between the replica
+ * {@code EntityManagerFactory} instances in turn, or performed on the primary when no replicas are provided.
+ * <p>
+ * Since replicas may lag behind the primary, the facade can be configured to perform the reads of a thread on the
+ * primary for a period of time after the thread has written, so that the thread sees its own writes. Note that each
+ * {@code EntityManagerFactory} has its own second-level cache, which is not evicted by writes to the primary.
+ */
 public class Facade implements Repository
 {
 
     /**
-     * The {@code EntityManagerFactory} that the facade performs operations upon.
+     * The maximum number of times a conflicting write operation is attempted, unless another {@link RetryPolicy} is
+     * provided using {@link #setRetryPolicy(RetryPolicy)}.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /**
+     * The {@code EntityManagerFactory} that the facade performs write operations upon.
      */
     private EntityManagerFactory entityManagerFactory;
 
+    /**
+     * The {@code EntityManagerFactory} instances that the facade performs read operations upon. When empty, read
+     * operations are performed on the primary {@code EntityManagerFactory}.
+     */
+    private final List<EntityManagerFactory> replicas;
+
+    /**
+     * The number of replica reads started, used to select the replica of the next read.
+     */
+    private final AtomicInteger replicaReads = new AtomicInteger();
+
+    /**
+     * The number of nanoseconds after a write during which the reads of the writing thread are performed on the
+     * primary {@code EntityManagerFactory}.
+     */
+    private final long stickiness;
+
+    /**
+     * The {@code System.nanoTime()} until which the reads of the current thread are performed on the primary
+     * {@code EntityManagerFactory}. The time is kept in an array, so that it can be updated without boxing.
+     */
+    private final ThreadLocal<long[]> stickyUntil = ThreadLocal.withInitial(() -> new long[]{System.nanoTime()});
+
+    /**
+     * The {@link TransactionalRepository} of the unit of work that the current thread is performing, {@code null} when
+     * the thread is not performing a unit of work.
+     *
+     * @see #inTransaction(Function)
+     */
+    private final ThreadLocal<TransactionalRepository> unitOfWork = new ThreadLocal<>();
+
+    /**
+     * The pool that the facade acquires connections from, {@code null} when the connections are provided by the
+     * persistence unit.
+     */
+    private ConnectionPool connectionPool;
+
+    /**
+     * The policy used to retry write operations that conflict with concurrent changes to the same entities.
+     */
+    private RetryPolicy retryPolicy = new RetryPolicy(DEFAULT_MAX_ATTEMPTS, 10, 200, TimeUnit.MILLISECONDS);
+
     /**
      * Creates a new {@link Facade}.
      *
@@ -23,7 +94,99 @@ public class Facade implements Repository
      */
     public Facade(EntityManagerFactory entityManagerFactory)
     {
-        this.entityManagerFactory = entityManagerFactory;
+        this(entityManagerFactory, Collections.emptyList());
+    }
+
+    /**
+     * Creates a new {@link Facade} that performs write operations on the primary {@code EntityManagerFactory}, and
+     * distributes read operations between the replicas.
+     *
+     * @param primary  The {@code EntityManagerFactory} that the facade performs write operations upon.
+     * @param replicas The {@code EntityManagerFactory} instances that the facade performs read operations upon. When
+     *                 empty, read operations are performed on the primary {@code EntityManagerFactory}.
+     */
+    public Facade(EntityManagerFactory primary, List<EntityManagerFactory> replicas)
+    {
+        this(primary, replicas, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates a new {@link Facade} that performs write operations on the primary {@code EntityManagerFactory}, and
+     * distributes read operations between the replicas. For the provided period after a thread has written using the
+     * facade, the reads of the thread are performed on the primary {@code EntityManagerFactory}, so that the thread
+     * sees its own writes while the replicas catch up.
+     *
+     * @param primary    The {@code EntityManagerFactory} that the facade performs write operations upon.
+     * @param replicas   The {@code EntityManagerFactory} instances that the facade performs read operations upon.
+     *                   When empty, read operations are performed on the primary {@code EntityManagerFactory}.
+     * @param stickiness The period after a write during which the reads of the writing thread are performed on the
+     *                   primary {@code EntityManagerFactory}. Use {@code 0} to always read from the replicas.
+     * @param unit       The unit of the provided period.
+     */
+    public Facade(EntityManagerFactory primary, List<EntityManagerFactory> replicas, long stickiness, TimeUnit unit)
+    {
+        if (stickiness < 0)
+            throw new IllegalArgumentException("The stickiness must not be negative.");
+
+        this.entityManagerFactory = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.stickiness = unit.toNanos(stickiness);
+    }
+
+    /**
+     * Creates a new {@link Facade}, that acquires its connections from the provided {@link ConnectionPool}. The
+     * {@code EntityManagerFactory} of the facade is closed when the {@link ConnectionPool} is closed.
+     *
+     * @param persistenceUnit The name of the persistence unit that the facade performs operations upon.
+     * @param connectionPool  The pool that the facade acquires connections from.
+     */
+    public Facade(String persistenceUnit, ConnectionPool connectionPool)
+    {
+        this(connectionPool.createEntityManagerFactory(persistenceUnit));
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Returns the pool that the facade acquires connections from.
+     *
+     * @return The pool that the facade acquires connections from, {@code null} when the connections are provided by
+     * the persistence unit.
+     */
+    public ConnectionPool getConnectionPool()
+    {
+        return this.connectionPool;
+    }
+
+    /**
+     * Returns the policy used to retry write operations that conflict with concurrent changes to the same entities.
+     * The policy records the conflict and retry counts of the facade.
+     *
+     * @return The policy used to retry conflicting write operations.
+     */
+    public RetryPolicy getRetryPolicy()
+    {
+        return this.retryPolicy;
+    }
+
+    /**
+     * Sets the policy used to retry write operations that conflict with concurrent changes to the same entities.
+     *
+     * @param retryPolicy The policy used to retry conflicting write operations. Use {@link RetryPolicy#never()} to
+     *                    never retry.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy)
+    {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Returns the hit, miss, put and eviction counts of the cache regions used by the facade.
+     *
+     * @return The statistics of the cache regions used by the facade.
+     */
+    public CacheStatistics getCacheStatistics()
+    {
+        return new CacheStatistics(entityManagerFactory);
     }
 
     /**
@@ -37,6 +200,128 @@ public class Facade implements Repository
         return new TransactionalRepository(entityManagerFactory);
     }
 
+    /**
+     * Creates a new read-only {@link TransactionalRepository} from a newly created {@code EntityManager} from the
+     * declared {@code EntityManagerFactory}.
+     *
+     * @return The resulting {@link TransactionalRepository}.
+     * @see TransactionStrategy#READ_ONLY
+     */
+    private TransactionalRepository newReadOnlyRepository()
+    {
+        return new TransactionalRepository(readFactory(), TransactionStrategy.READ_ONLY);
+    }
+
+    /**
+     * Returns the {@code EntityManagerFactory} to perform the next read operation upon. The replicas are selected in
+     * turn, unless the current thread has written within the stickiness period.
+     *
+     * @return The {@code EntityManagerFactory} to perform the next read operation upon.
+     */
+    private EntityManagerFactory readFactory()
+    {
+        if (replicas.isEmpty() || (stickiness > 0 && System.nanoTime() - stickyUntil.get()[0] < 0))
+            return entityManagerFactory;
+
+        return replicas.get(Math.floorMod(replicaReads.getAndIncrement(), replicas.size()));
+    }
+
+    /**
+     * Commits the provided {@link TransactionalRepository}, and starts the stickiness period of the current thread.
+     *
+     * @param transactionalRepository The {@link TransactionalRepository} to commit.
+     */
+    private void commit(TransactionalRepository transactionalRepository)
+    {
+        transactionalRepository.commit();
+        if (stickiness > 0)
+            stickyUntil.get()[0] = System.nanoTime() + stickiness;
+    }
+
+    /**
+     * Performs the provided unit of work in a single transaction. The transaction is committed when the unit of work
+     * returns, and rolled back when it throws an exception.
+     * <p>
+     * When called from within another unit of work on the same thread, the provided unit of work joins the transaction
+     * of the enclosing unit of work using a savepoint. An exception thrown by the nested unit of work only rolls back
+     * the changes made after the savepoint, and is rethrown to the enclosing unit of work, which may handle it and
+     * continue. A rolled back nested unit of work clears the persistence context, detaching every entity read so far.
+     * <p>
+     * A nested unit of work failing with a {@code PersistenceException}, such as a constraint violation or a lock
+     * timeout, marks the entire transaction for rollback. The enclosing unit of work may still handle the exception
+     * and continue, but its transaction is then rolled back instead of committed, and a {@code RollbackException} is
+     * thrown when it returns.
+     *
+     * @param work The unit of work to perform, provided the {@link TransactionalRepository} it is performed on. The
+     *             {@link TransactionalRepository} must not be committed, rolled back or closed by the unit of work.
+     * @param <T>  The type of result returned by the unit of work.
+     * @return The result returned by the unit of work.
+     */
+    public <T> T inTransaction(Function<TransactionalRepository, T> work)
+    {
+        TransactionalRepository enclosing = unitOfWork.get();
+        if (enclosing != null)
+            return inSavepoint(enclosing, work);
+
+        TransactionalRepository transactionalRepository = new TransactionalRepository(entityManagerFactory,
+                                                                              TransactionStrategy.ROLLBACK);
+        unitOfWork.set(transactionalRepository);
+        try {
+            T result = work.apply(transactionalRepository);
+            if (transactionalRepository.isRollbackOnly())
+                throw new RollbackException("The unit of work was marked for rollback by a failed operation.");
+
+            commit(transactionalRepository);
+            return result;
+        } catch (RuntimeException | Error e) {
+            if (transactionalRepository.isActive())
+                transactionalRepository.rollback();
+            throw e;
+        } finally {
+            unitOfWork.remove();
+            transactionalRepository.close();
+        }
+    }
+
+    /**
+     * Performs the provided unit of work in a single transaction. The transaction is committed when the unit of work
+     * returns, and rolled back when it throws an exception. Nested units of work are handled as described by
+     * {@link #inTransaction(Function)}.
+     *
+     * @param work The unit of work to perform, provided the {@link TransactionalRepository} it is performed on. The
+     *             {@link TransactionalRepository} must not be committed, rolled back or closed by the unit of work.
+     */
+    public void runInTransaction(Consumer<TransactionalRepository> work)
+    {
+        inTransaction(transactionalRepository -> {
+            work.accept(transactionalRepository);
+            return null;
+        });
+    }
+
+    /**
+     * Performs the provided nested unit of work in the transaction of the enclosing unit of work, rolling back to a
+     * savepoint when the nested unit of work throws an exception.
+     *
+     * @param enclosing The {@link TransactionalRepository} of the enclosing unit of work.
+     * @param work      The nested unit of work to perform.
+     * @param <T>       The type of result returned by the unit of work.
+     * @return The result returned by the unit of work.
+     */
+    private <T> T inSavepoint(TransactionalRepository enclosing, Function<TransactionalRepository, T> work)
+    {
+        Savepoint savepoint = enclosing.setSavepoint();
+        try {
+            T result = work.apply(enclosing);
+            enclosing.releaseSavepoint(savepoint);
+            return result;
+        } catch (RuntimeException | Error e) {
+            if (enclosing.isActive())
+                enclosing.rollbackToSavepoint(savepoint);
+            throw e;
+        }
+    }
+
     /**
      * Creates a new customer with the provided name and email. The results are committed automatically when no
      * exception occurs. When an exception occurs the results are rolled back.
@@ -49,9 +334,8 @@ public class Facade implements Repository
     {
         TransactionalRepository transactionalRepository = newTransactionalRepository();
         try {
-            transactionalRepository.begin();
             Customer customer = transactionalRepository.createCustomer(name, email);
-            transactionalRepository.commit();
+            commit(transactionalRepository);
             return customer;
         } catch (Exception e) {
             transactionalRepository.rollback();
@@ -69,11 +353,37 @@ public class Facade implements Repository
      */
     @Override public Customer findCustomer(long id)
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.findCustomer(id);
         }
     }
 
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<Customer> findCustomers(long[] ids)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.findCustomers(ids);
+        }
+    }
+
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<Customer> findCustomers(Collection<Long> ids)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.findCustomers(ids);
+        }
+    }
+
     /**
      * Returns a complete list of customers.
      *
@@ -81,11 +391,38 @@ public class Facade implements Repository
      */
     @Override public List<Customer> getCustomers()
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getCustomers();
         }
     }
 
+    /**
+     * Returns the customers with an id greater than the provided id, sorted by their id. The last id of the returned
+     * page is used to retrieve the next page.
+     *
+     * @param after The id after which customers are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of customers to return.
+     * @return The page of customers.
+     */
+    @Override public List<Customer> getCustomers(long after, int limit)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getCustomers(after, limit);
+        }
+    }
+
+    /**
+     * Returns a stream of all the customers. The customers are read from a database cursor, and are detached before
+     * they are returned. The returned stream must be closed, which closes the underlying {@code EntityManager}.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of customers.
+     */
+    @Override public Stream<Customer> streamCustomers(int fetchSize)
+    {
+        return stream(transactionalRepository -> transactionalRepository.streamCustomers(fetchSize));
+    }
+
     /**
      * Creates a new order from the provided arguments. The results are committed automatically when no
      * exception occurs. When an exception occurs the results are rolled back.
@@ -96,10 +433,35 @@ public class Facade implements Repository
     @Override public Order createOrder(Customer customer)
     {
         try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
-            transactionalRepository.begin();
             Order order = transactionalRepository.createOrder(customer);
-            transactionalRepository.commit();
+            commit(transactionalRepository);
+            return order;
+        }
+    }
+
+    /**
+     * Creates a new order containing the provided lines. The order and all of its lines are written in a single
+     * transaction. The results are committed automatically when no exception occurs. When an exception occurs the
+     * results are rolled back.
+     *
+     * @param customer The customer who owns the order.
+     * @param lines    The lines to include in the order. Each line is created using
+     *                 {@link OrderLine#OrderLine(long, ItemType)}, and must not have been persisted already.
+     * @return The newly created order entity.
+     */
+    @Override public Order createOrder(Customer customer, List<OrderLine> lines)
+    {
+        TransactionalRepository transactionalRepository = newTransactionalRepository();
+        try {
+            Order order = transactionalRepository.createOrder(customer, lines);
+            commit(transactionalRepository);
             return order;
+        } catch (Exception e) {
+            if (transactionalRepository.isActive())
+                transactionalRepository.rollback();
+            throw e;
+        } finally {
+            transactionalRepository.close();
         }
     }
 
@@ -111,11 +473,26 @@ public class Facade implements Repository
      */
     @Override public Order getOrder(long id)
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getOrder(id);
         }
     }
 
+    /**
+     * Returns the order with the provided id, together with the associations described by the provided fetch plan.
+     * The associations can be accessed after the order is returned.
+     *
+     * @param id   The id of the order to return.
+     * @param plan The associations to load together with the order.
+     * @return The order with the provided id, {@code null} when no such order exists.
+     */
+    @Override public Order getOrder(long id, OrderFetchPlan plan)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrder(id, plan);
+        }
+    }
+
     /**
      * Returns all the orders in the repository.
      *
@@ -123,11 +500,52 @@ public class Facade implements Repository
      */
     @Override public List<Order> getOrders()
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getOrders();
         }
     }
 
+    /**
+     * Returns all the orders in the repository, together with the associations described by the provided fetch plan.
+     * The associations can be accessed after the orders are returned.
+     *
+     * @param plan The associations to load together with the orders.
+     * @return The complete list of the orders in the repository.
+     */
+    @Override public List<Order> getOrders(OrderFetchPlan plan)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrders(plan);
+        }
+    }
+
+    /**
+     * Returns the orders with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of orders to return.
+     * @return The page of orders.
+     */
+    @Override public List<Order> getOrders(long after, int limit)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrders(after, limit);
+        }
+    }
+
+    /**
+     * Returns a stream of all the orders. The orders are read from a database cursor, and are detached before they
+     * are returned. The returned stream must be closed, which closes the underlying {@code EntityManager}.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders.
+     */
+    @Override public Stream<Order> streamOrders(int fetchSize)
+    {
+        return stream(transactionalRepository -> transactionalRepository.streamOrders(fetchSize));
+    }
+
     /**
      * Returns all the orders for the provided customers.
      *
@@ -136,27 +554,167 @@ public class Facade implements Repository
      */
     @Override public List<Order> getOrders(Customer customer)
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getOrders(customer);
         }
     }
 
     /**
-     * Creates a new {@code OrderLine} and adds it to the provided {@code Order}.
+     * Returns all the orders for the provided customers, together with the associations described by the provided
+     * fetch plan. The associations can be accessed after the orders are returned.
+     *
+     * @param customer The customer to return the order of.
+     * @param plan     The associations to load together with the orders.
+     * @return The complete list of the orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer, OrderFetchPlan plan)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrders(customer, plan);
+        }
+    }
+
+    /**
+     * Returns the orders for the provided customer with an id greater than the provided id, sorted by their id. The
+     * last id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the orders of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of orders to return.
+     * @return The page of orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer, long after, int limit)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrders(customer, after, limit);
+        }
+    }
+
+    /**
+     * Returns a stream of the orders for the provided customer. The orders are read from a database cursor, and are
+     * detached before they are returned. The returned stream must be closed, which closes the underlying
+     * {@code EntityManager}.
+     *
+     * @param customer  The customer to return the orders of.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders belonging to the provided customer.
+     */
+    @Override public Stream<Order> streamOrders(Customer customer, int fetchSize)
+    {
+        return stream(transactionalRepository -> transactionalRepository.streamOrders(customer, fetchSize));
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer, sorted by the id of the order. The
+     * summaries are read using a single query, without loading the orders into the persistence context.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @return The summaries of the orders belonging to the provided customer.
+     */
+    @Override public List<OrderSummary> getOrderSummaries(Customer customer)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrderSummaries(customer);
+        }
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer with an id greater than the provided id,
+     * sorted by the id of the order. The last order id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of summaries to return.
+     * @return The page of order summaries.
+     */
+    @Override public List<OrderSummary> getOrderSummaries(Customer customer, long after, int limit)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getOrderSummaries(customer, after, limit);
+        }
+    }
+
+    /**
+     * Creates a new {@code OrderLine} and adds it to the provided {@code Order}. When the order has been changed
+     * concurrently, the operation is retried on the current version of the order, as allowed by the
+     * {@link RetryPolicy} of the facade. The total and version of the provided order are updated when the line has
+     * been committed, using the total read from the database rather than the total of the provided copy.
      *
      * @param order    The order to add the newly created {@code OrderLine} to.
      * @param quantity The number of the provided item to include in the {@code OrderLine}.
      * @param itemType The {@code ItemType} to place in the {@code OrderLine}.
      * @return The newly created {@code OrderLine} entity.
+     * @throws OptimisticLockException When the order is still changed concurrently after the maximum number of
+     *                                 attempts.
      */
     @Override public OrderLine createOrderLine(Order order, long quantity, ItemType itemType)
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
-            transactionalRepository.begin();
-            OrderLine orderLine = transactionalRepository.createOrderLine(order, quantity, itemType);
-            transactionalRepository.commit();
-            return orderLine;
+        OrderLine orderLine = retryPolicy.execute(attempt -> {
+            TransactionalRepository transactionalRepository = newTransactionalRepository();
+            try {
+                Order current = attempt == 1 ? order : transactionalRepository.getOrder(order.getId());
+                if (current == null)
+                    throw new EntityNotFoundException("No order with the id " + order.getId() + " exists.");
+
+                OrderLine created = transactionalRepository.createOrderLine(current, quantity, itemType);
+                commit(transactionalRepository);
+                return created;
+            } catch (Exception e) {
+                if (transactionalRepository.isActive())
+                    transactionalRepository.rollback();
+                throw e;
+            } finally {
+                transactionalRepository.close();
+            }
+        });
+
+        Order committed = orderLine.getOrder();
+        if (committed != order) {
+            if (Hibernate.isInitialized(order.getLines()))
+                order.addLine(orderLine);
+            order.setTotal(committed.getTotal());
+            order.setVersion(committed.getVersion());
         }
+
+        return orderLine;
+    }
+
+    /**
+     * Adds the provided lines to the provided {@code Order}, writing them in a single transaction. The results are
+     * committed automatically when no exception occurs. When an exception occurs the results are rolled back. The
+     * total of the provided order is set to the new total, and its version to the incremented version. When lines are added to the same order concurrently, the operation is retried as allowed by the
+     * {@link RetryPolicy} of the facade.
+     *
+     * @param order The order to add the lines to. The order must have been persisted already.
+     * @param lines The lines to add. Each line is created using {@link OrderLine#OrderLine(long, ItemType)}, and must
+     *              not have been persisted already.
+     * @return The provided lines, which have been assigned their ids.
+     */
+    @Override public List<OrderLine> createOrderLines(Order order, List<OrderLine> lines)
+    {
+        List<OrderLine> created = retryPolicy.execute(attempt -> {
+            if (attempt > 1)
+                for (OrderLine line : lines)
+                    line.setId(0);
+
+            TransactionalRepository transactionalRepository = newTransactionalRepository();
+            try {
+                List<OrderLine> result = transactionalRepository.createOrderLines(order, lines);
+                commit(transactionalRepository);
+                return result;
+            } catch (Exception e) {
+                if (transactionalRepository.isActive())
+                    transactionalRepository.rollback();
+                throw e;
+            } finally {
+                transactionalRepository.close();
+            }
+        });
+
+        if (!created.isEmpty() && created.get(0).getOrder() != order)
+            order.setVersion(created.get(0).getOrder().getVersion());
+
+        return created;
     }
 
     /**
@@ -170,9 +728,8 @@ public class Facade implements Repository
     @Override public ItemType createItemType(String name, String description, long price)
     {
         try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
-            transactionalRepository.begin();
             ItemType itemType = transactionalRepository.createItemType(name, description, price);
-            transactionalRepository.commit();
+            commit(transactionalRepository);
             return itemType;
         }
     }
@@ -185,11 +742,37 @@ public class Facade implements Repository
      */
     @Override public long getTotal(Order order)
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getTotal(order);
         }
     }
 
+    /**
+     * Returns the totals of the provided orders.
+     *
+     * @param orders The orders to find the totals of.
+     * @return The totals of the provided orders, mapped by the id of the order.
+     */
+    @Override public OrderTotals getTotals(Collection<Order> orders)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getTotals(orders);
+        }
+    }
+
+    /**
+     * Returns the totals of the orders belonging to the provided customer.
+     *
+     * @param customer The customer to find the order totals of.
+     * @return The totals of the orders belonging to the provided customer, mapped by the id of the order.
+     */
+    @Override public OrderTotals getTotals(Customer customer)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getTotals(customer);
+        }
+    }
+
     /**
      * Returns the {@code ItemType} with the provided id.
      *
@@ -198,11 +781,37 @@ public class Facade implements Repository
      */
     @Override public ItemType getItem(long id)
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getItem(id);
         }
     }
 
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<ItemType> getItems(long[] ids)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getItems(ids);
+        }
+    }
+
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<ItemType> getItems(Collection<Long> ids)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getItems(ids);
+        }
+    }
+
     /**
      * Returns all the items in the repository.
      *
@@ -210,8 +819,54 @@ public class Facade implements Repository
      */
     @Override public List<ItemType> getItems()
     {
-        try (TransactionalRepository transactionalRepository = newTransactionalRepository()) {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
             return transactionalRepository.getItems();
         }
     }
+
+    /**
+     * Returns the items with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which items are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of items to return.
+     * @return The page of items.
+     */
+    @Override public List<ItemType> getItems(long after, int limit)
+    {
+        try (TransactionalRepository transactionalRepository = newReadOnlyRepository()) {
+            return transactionalRepository.getItems(after, limit);
+        }
+    }
+
+    /**
+     * Returns a stream of all the items. The items are read from a database cursor, and are detached before they are
+     * returned. The returned stream must be closed, which closes the underlying {@code EntityManager}.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of items.
+     */
+    @Override public Stream<ItemType> streamItems(int fetchSize)
+    {
+        return stream(transactionalRepository -> transactionalRepository.streamItems(fetchSize));
+    }
+
+    /**
+     * Opens the stream returned by the provided function on a new {@link TransactionalRepository}. The
+     * {@link TransactionalRepository} is kept open until the stream is closed.
+     *
+     * @param function The function that opens the stream.
+     * @param <T>      The type of the elements in the stream.
+     * @return The resulting stream.
+     */
+    private <T> Stream<T> stream(Function<TransactionalRepository, Stream<T>> function)
+    {
+        TransactionalRepository transactionalRepository = newReadOnlyRepository();
+        try {
+            return function.apply(transactionalRepository).onClose(transactionalRepository::close);
+        } catch (Exception e) {
+            transactionalRepository.close();
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,77 @@
+package com.tvestergaard.ca;
+
+/**
+ * A row that could not be imported by the {@link BulkImporter}.
+ */
+public class ImportFailure
+{
+
+    /**
+     * The line of the input the row was read from.
+     */
+    private final long line;
+
+    /**
+     * The number of rows that were not imported. Larger than {@code 1} when the lines of an order are rejected
+     * together.
+     */
+    private final int rows;
+
+    /**
+     * The reason the row could not be imported.
+     */
+    private final String message;
+
+    /**
+     * Creates a new {@link ImportFailure}.
+     *
+     * @param line    The line of the input the row was read from.
+     * @param rows    The number of rows that were not imported.
+     * @param message The reason the row could not be imported.
+     */
+    public ImportFailure(long line, int rows, String message)
+    {
+        this.line = line;
+        this.rows = rows;
+        this.message = message;
+    }
+
+    /**
+     * Returns the line of the input the row was read from.
+     *
+     * @return The line of the input the row was read from, starting from {@code 1}.
+     */
+    public long getLine()
+    {
+        return this.line;
+    }
+
+    /**
+     * Returns the number of rows that were not imported, starting from {@link #getLine()}.
+     *
+     * @return The number of rows that were not imported.
+     */
+    public int getRows()
+    {
+        return this.rows;
+    }
+
+    /**
+     * Returns the reason the row could not be imported.
+     *
+     * @return The reason the row could not be imported.
+     */
+    public String getMessage()
+    {
+        return this.message;
+    }
+
+    @Override public String toString()
+    {
+        return "ImportFailure{" +
+               "line=" + line +
+               ", rows=" + rows +
+               ", message='" + message + '\'' +
+               '}';
+    }
+}
@@ -0,0 +1,20 @@
+package com.tvestergaard.ca;
+
+/**
+ * The formats read by the {@link BulkImporter}. Each record occupies a single line of the input.
+ */
+public enum ImportFormat
+{
+
+    /**
+     * Comma separated values. The first line contains the names of the fields. Fields may be enclosed in double
+     * quotes, in which case they may contain commas, and double quotes written as two double quotes.
+     */
+    CSV,
+
+    /**
+     * One flat JSON object on each line, for example {@code {"name": "Thomas", "email": "thomas@example.com"}}.
+     * Values must be strings, numbers, booleans or {@code null}.
+     */
+    JSON_LINES
+}
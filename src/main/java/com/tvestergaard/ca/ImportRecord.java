@@ -0,0 +1,76 @@
+package com.tvestergaard.ca;
+
+import java.util.Map;
+
+/**
+ * A single record read by the {@link BulkImporter}, mapping the names of the fields to their values.
+ */
+final class ImportRecord
+{
+
+    /**
+     * The line of the input the record was read from, starting from {@code 1}.
+     */
+    private final long line;
+
+    /**
+     * The values of the record, mapped by the name of the field.
+     */
+    private final Map<String, String> fields;
+
+    /**
+     * Creates a new {@link ImportRecord}.
+     *
+     * @param line   The line of the input the record was read from, starting from {@code 1}.
+     * @param fields The values of the record, mapped by the name of the field.
+     */
+    ImportRecord(long line, Map<String, String> fields)
+    {
+        this.line = line;
+        this.fields = fields;
+    }
+
+    /**
+     * Returns the line of the input the record was read from.
+     *
+     * @return The line of the input the record was read from, starting from {@code 1}.
+     */
+    long getLine()
+    {
+        return this.line;
+    }
+
+    /**
+     * Returns the value of the provided field.
+     *
+     * @param field The name of the field.
+     * @return The value of the provided field.
+     * @throws IllegalArgumentException When the record has no value for the provided field.
+     */
+    String getString(String field)
+    {
+        String value = fields.get(field);
+        if (value == null)
+            throw new IllegalArgumentException("Missing field " + field + " on line " + line);
+
+        return value;
+    }
+
+    /**
+     * Returns the value of the provided field as a {@code long}.
+     *
+     * @param field The name of the field.
+     * @return The value of the provided field.
+     * @throws IllegalArgumentException When the record has no value for the provided field, or when the value is not
+     *                                  a number.
+     */
+    long getLong(String field)
+    {
+        String value = getString(field);
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Field " + field + " on line " + line + " is not a number: " + value);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.tvestergaard.ca;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the records of an input in one of the {@link ImportFormat} formats, one line at a time.
+ */
+final class ImportRecordReader
+{
+
+    /**
+     * The input to read records from.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * The format of the input.
+     */
+    private final ImportFormat format;
+
+    /**
+     * The names of the fields, read from the first line of {@link ImportFormat#CSV} input.
+     */
+    private List<String> header;
+
+    /**
+     * The number of lines read so far.
+     */
+    private long line;
+
+    /**
+     * Creates a new {@link ImportRecordReader}.
+     *
+     * @param reader The input to read records from.
+     * @param format The format of the input.
+     */
+    ImportRecordReader(BufferedReader reader, ImportFormat format)
+    {
+        this.reader = reader;
+        this.format = format;
+    }
+
+    /**
+     * Reads the next record of the input. Blank lines are skipped.
+     *
+     * @return The next record, {@code null} when the end of the input is reached.
+     * @throws IllegalArgumentException When the line is malformed. The line is skipped, so reading can continue.
+     * @throws UncheckedIOException     When the input could not be read.
+     */
+    ImportRecord next()
+    {
+        String text = readLine();
+        while (text != null && text.trim().isEmpty())
+            text = readLine();
+
+        if (text == null)
+            return null;
+
+        if (format == ImportFormat.JSON_LINES)
+            return new ImportRecord(line, parseJson(text));
+
+        if (header == null) {
+            header = parseCsv(text);
+            return next();
+        }
+
+        List<String>        values = parseCsv(text);
+        Map<String, String> fields = new HashMap<>();
+        if (values.size() != header.size())
+            throw malformed("Expected " + header.size() + " fields, found " + values.size());
+        for (int x = 0; x < values.size(); x++)
+            fields.put(header.get(x), values.get(x));
+
+        return new ImportRecord(line, fields);
+    }
+
+    /**
+     * Returns the number of lines read so far.
+     *
+     * @return The number of lines read so far, which is the line of the most recently read record.
+     */
+    long getLine()
+    {
+        return this.line;
+    }
+
+    /**
+     * Reads the next line of the input.
+     *
+     * @return The next line, {@code null} when the end of the input is reached.
+     */
+    private String readLine()
+    {
+        try {
+            String text = reader.readLine();
+            if (text != null)
+                line++;
+            return text;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Splits the provided line of comma separated values.
+     *
+     * @param text The line to split.
+     * @return The values of the line.
+     */
+    private List<String> parseCsv(String text)
+    {
+        List<String>  values = new ArrayList<>();
+        StringBuilder value  = new StringBuilder();
+        boolean       quoted = false;
+        int           x      = 0;
+        while (x < text.length()) {
+            char c = text.charAt(x++);
+            if (quoted) {
+                if (c != '"')
+                    value.append(c);
+                else if (x < text.length() && text.charAt(x) == '"')
+                    value.append(text.charAt(x++));
+                else
+                    quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+
+        if (quoted)
+            throw malformed("Unterminated quoted field");
+
+        values.add(value.toString());
+        return values;
+    }
+
+    /**
+     * Parses the provided line containing a flat JSON object.
+     *
+     * @param text The line to parse.
+     * @return The values of the object, mapped by their name. Numbers and booleans are returned as written, and
+     * {@code null} values are omitted.
+     */
+    private Map<String, String> parseJson(String text)
+    {
+        JsonCursor          cursor = new JsonCursor(text);
+        Map<String, String> fields = new HashMap<>();
+        cursor.expect('{');
+        if (cursor.peek() == '}') {
+            cursor.expect('}');
+            cursor.end();
+            return fields;
+        }
+
+        do {
+            String name = cursor.string();
+            cursor.expect(':');
+            String value = cursor.value();
+            if (value != null)
+                fields.put(name, value);
+        } while (cursor.skip(','));
+
+        cursor.expect('}');
+        cursor.end();
+        return fields;
+    }
+
+    /**
+     * Creates the exception thrown when the current line is malformed.
+     *
+     * @param message The reason the line is malformed.
+     * @return The resulting exception.
+     */
+    private IllegalArgumentException malformed(String message)
+    {
+        return new IllegalArgumentException(message + " on line " + line);
+    }
+
+    /**
+     * Position within a line containing a JSON object.
+     */
+    private class JsonCursor
+    {
+
+        /**
+         * The line being parsed.
+         */
+        private final String text;
+
+        /**
+         * The index of the next character.
+         */
+        private int position;
+
+        JsonCursor(String text)
+        {
+            this.text = text;
+        }
+
+        /**
+         * Returns the next character that is not whitespace, without consuming it.
+         *
+         * @return The next character that is not whitespace, {@code 0} at the end of the line.
+         */
+        char peek()
+        {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position)))
+                position++;
+
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        /**
+         * Consumes the provided character.
+         *
+         * @param c The character to consume.
+         */
+        void expect(char c)
+        {
+            if (peek() != c)
+                throw malformed("Expected '" + c + "' at column " + (position + 1));
+            position++;
+        }
+
+        /**
+         * Consumes the provided character, when it is the next character.
+         *
+         * @param c The character to consume.
+         * @return Whether the character was consumed.
+         */
+        boolean skip(char c)
+        {
+            if (peek() != c)
+                return false;
+            position++;
+            return true;
+        }
+
+        /**
+         * Ensures that nothing but whitespace follows.
+         */
+        void end()
+        {
+            if (peek() != 0)
+                throw malformed("Unexpected content at column " + (position + 1));
+        }
+
+        /**
+         * Consumes a string, number, boolean or {@code null} value.
+         *
+         * @return The consumed value, {@code null} when the value is {@code null}.
+         */
+        String value()
+        {
+            if (peek() == '"')
+                return string();
+
+            int start = position;
+            while (position < text.length() && ",} \t".indexOf(text.charAt(position)) < 0)
+                position++;
+
+            String literal = text.substring(start, position);
+            if (literal.isEmpty() || literal.charAt(0) == '{' || literal.charAt(0) == '[')
+                throw malformed("Expected a string, number, boolean or null at column " + (start + 1));
+
+            return literal.equals("null") ? null : literal;
+        }
+
+        /**
+         * Consumes a string.
+         *
+         * @return The consumed string, with its escape sequences replaced.
+         */
+        String string()
+        {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"')
+                    return value.toString();
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+
+                if (position >= text.length())
+                    break;
+
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length())
+                            throw malformed("Invalid escape sequence at column " + position);
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw malformed("Invalid escape sequence at column " + position);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+
+            throw malformed("Unterminated string");
+        }
+    }
+}
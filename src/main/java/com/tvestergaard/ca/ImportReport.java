@@ -0,0 +1,149 @@
+package com.tvestergaard.ca;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the progress of an import performed by the {@link BulkImporter}.
+ */
+public class ImportReport
+{
+
+    /**
+     * The number of rows read from the input.
+     */
+    private final long rowsRead;
+
+    /**
+     * The number of rows written to the database.
+     */
+    private final long rowsImported;
+
+    /**
+     * The number of rows that could not be imported.
+     */
+    private final long rowsFailed;
+
+    /**
+     * The time elapsed since the import started, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Whether the import has completed.
+     */
+    private final boolean completed;
+
+    /**
+     * The rows that could not be imported.
+     */
+    private final List<ImportFailure> failures;
+
+    /**
+     * Creates a new {@link ImportReport}.
+     *
+     * @param rowsRead     The number of rows read from the input.
+     * @param rowsImported The number of rows written to the database.
+     * @param rowsFailed   The number of rows that could not be imported.
+     * @param elapsedNanos The time elapsed since the import started, in nanoseconds.
+     * @param completed    Whether the import has completed.
+     * @param failures     The rows that could not be imported.
+     */
+    public ImportReport(long rowsRead, long rowsImported, long rowsFailed, long elapsedNanos, boolean completed,
+                        List<ImportFailure> failures)
+    {
+        this.rowsRead = rowsRead;
+        this.rowsImported = rowsImported;
+        this.rowsFailed = rowsFailed;
+        this.elapsedNanos = elapsedNanos;
+        this.completed = completed;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * Returns the number of rows read from the input.
+     *
+     * @return The number of rows read from the input.
+     */
+    public long getRowsRead()
+    {
+        return this.rowsRead;
+    }
+
+    /**
+     * Returns the number of rows written to the database.
+     *
+     * @return The number of rows written to the database.
+     */
+    public long getRowsImported()
+    {
+        return this.rowsImported;
+    }
+
+    /**
+     * Returns the number of rows that could not be imported.
+     *
+     * @return The number of rows that could not be imported.
+     */
+    public long getRowsFailed()
+    {
+        return this.rowsFailed;
+    }
+
+    /**
+     * Returns the time elapsed since the import started.
+     *
+     * @param unit The unit of the returned time.
+     * @return The time elapsed since the import started.
+     */
+    public long getElapsed(TimeUnit unit)
+    {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of rows written to the database each second, since the import started.
+     *
+     * @return The number of rows written to the database each second.
+     */
+    public double getRowsPerSecond()
+    {
+        if (elapsedNanos == 0)
+            return 0;
+
+        return rowsImported * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * Returns whether the import has completed.
+     *
+     * @return {@code true} when the import has completed, {@code false} while the import is in progress, or when the
+     * import was interrupted or its workers failed.
+     */
+    public boolean isCompleted()
+    {
+        return this.completed;
+    }
+
+    /**
+     * Returns the rows that could not be imported.
+     *
+     * @return The rows that could not be imported, in the order they were rejected.
+     */
+    public List<ImportFailure> getFailures()
+    {
+        return this.failures;
+    }
+
+    @Override public String toString()
+    {
+        return "ImportReport{" +
+               "rowsRead=" + rowsRead +
+               ", rowsImported=" + rowsImported +
+               ", rowsFailed=" + rowsFailed +
+               ", rowsPerSecond=" + Math.round(getRowsPerSecond()) +
+               ", completed=" + completed +
+               '}';
+    }
+}
@@ -0,0 +1,468 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Decorator recording the latency, SQL statements, loaded entities, flush time and errors of each operation performed
+ * on a {@link Repository}, such as a {@link Facade} or a {@link TransactionalRepository}. The statements, entities and
+ * flush time are recorded on the thread performing the operation, which requires the {@link SessionMetricsListener}
+ * to be enabled in the persistence unit. For the stream operations, only opening the stream is recorded.
+ */
+public class InstrumentedRepository implements Repository
+{
+
+    /**
+     * The repository that operations are delegated to.
+     */
+    private final Repository repository;
+
+    /**
+     * The metrics the operations are recorded into.
+     */
+    private final RepositoryMetrics metrics;
+
+    /**
+     * Creates a new {@link InstrumentedRepository}.
+     *
+     * @param repository The repository that operations are delegated to.
+     * @param metrics    The metrics the operations are recorded into. The metrics can be shared by multiple
+     *                   instances.
+     */
+    public InstrumentedRepository(Repository repository, RepositoryMetrics metrics)
+    {
+        this.repository = repository;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the metrics the operations are recorded into.
+     *
+     * @return The metrics the operations are recorded into.
+     */
+    public RepositoryMetrics getMetrics()
+    {
+        return this.metrics;
+    }
+
+    /**
+     * Creates a new customer with the provided name and email.
+     *
+     * @param name  The name of the customer to create.
+     * @param email The email of the customer to create.
+     * @return The newly created customer entity.
+     */
+    @Override public Customer createCustomer(String name, String email)
+    {
+        return record("createCustomer(String, String)", () -> repository.createCustomer(name, email));
+    }
+
+    /**
+     * Finds the customer with the provided id.
+     *
+     * @param id The id of the customer to find.
+     * @return The customer with the provided id, {@code null} when no such customer exists.
+     */
+    @Override public Customer findCustomer(long id)
+    {
+        return record("findCustomer(long)", () -> repository.findCustomer(id));
+    }
+
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<Customer> findCustomers(long[] ids)
+    {
+        return record("findCustomers(long[])", () -> repository.findCustomers(ids));
+    }
+
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<Customer> findCustomers(Collection<Long> ids)
+    {
+        return record("findCustomers(Collection<Long>)", () -> repository.findCustomers(ids));
+    }
+
+    /**
+     * Returns a complete list of customers.
+     *
+     * @return The complete list of customers.
+     */
+    @Override public List<Customer> getCustomers()
+    {
+        return record("getCustomers()", () -> repository.getCustomers());
+    }
+
+    /**
+     * Returns the customers with an id greater than the provided id, sorted by their id. The last id of the returned
+     * page is used to retrieve the next page.
+     *
+     * @param after The id after which customers are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of customers to return.
+     * @return The page of customers.
+     */
+    @Override public List<Customer> getCustomers(long after, int limit)
+    {
+        return record("getCustomers(long, int)", () -> repository.getCustomers(after, limit));
+    }
+
+    /**
+     * Returns a stream of all the customers. The customers are read from a database cursor, and are detached before
+     * they are returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of customers.
+     */
+    @Override public Stream<Customer> streamCustomers(int fetchSize)
+    {
+        return record("streamCustomers(int)", () -> repository.streamCustomers(fetchSize));
+    }
+
+    /**
+     * Creates a new order from the provided arguments.
+     *
+     * @param customer The customer who owns the order.
+     * @return The newly created order entity.
+     */
+    @Override public Order createOrder(Customer customer)
+    {
+        return record("createOrder(Customer)", () -> repository.createOrder(customer));
+    }
+
+    /**
+     * Creates a new order containing the provided lines. The order and all of its lines are written together.
+     *
+     * @param customer The customer who owns the order.
+     * @param lines    The lines to include in the order. Each line is created using
+     *                 {@link OrderLine#OrderLine(long, ItemType)}, and must not have been persisted already.
+     * @return The newly created order entity.
+     */
+    @Override public Order createOrder(Customer customer, List<OrderLine> lines)
+    {
+        return record("createOrder(Customer, List<OrderLine>)", () -> repository.createOrder(customer, lines));
+    }
+
+    /**
+     * Returns the order with the provided id.
+     *
+     * @param id The id of the order to return.
+     * @return The order with the provided id, {@code null} when no such order exists.
+     */
+    @Override public Order getOrder(long id)
+    {
+        return record("getOrder(long)", () -> repository.getOrder(id));
+    }
+
+    /**
+     * Returns the order with the provided id, together with the associations described by the provided fetch plan.
+     *
+     * @param id   The id of the order to return.
+     * @param plan The associations to load together with the order.
+     * @return The order with the provided id, {@code null} when no such order exists.
+     */
+    @Override public Order getOrder(long id, OrderFetchPlan plan)
+    {
+        return record("getOrder(long, OrderFetchPlan)", () -> repository.getOrder(id, plan));
+    }
+
+    /**
+     * Returns all the orders in the repository.
+     *
+     * @return The complete list of the orders in the repository.
+     */
+    @Override public List<Order> getOrders()
+    {
+        return record("getOrders()", () -> repository.getOrders());
+    }
+
+    /**
+     * Returns all the orders in the repository, together with the associations described by the provided fetch plan.
+     *
+     * @param plan The associations to load together with the orders.
+     * @return The complete list of the orders in the repository.
+     */
+    @Override public List<Order> getOrders(OrderFetchPlan plan)
+    {
+        return record("getOrders(OrderFetchPlan)", () -> repository.getOrders(plan));
+    }
+
+    /**
+     * Returns the orders with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of orders to return.
+     * @return The page of orders.
+     */
+    @Override public List<Order> getOrders(long after, int limit)
+    {
+        return record("getOrders(long, int)", () -> repository.getOrders(after, limit));
+    }
+
+    /**
+     * Returns a stream of all the orders. The orders are read from a database cursor, and are detached before they
+     * are returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders.
+     */
+    @Override public Stream<Order> streamOrders(int fetchSize)
+    {
+        return record("streamOrders(int)", () -> repository.streamOrders(fetchSize));
+    }
+
+    /**
+     * Returns all the orders for the provided customers.
+     *
+     * @param customer The customer to return the order of.
+     * @return The complete list of the orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer)
+    {
+        return record("getOrders(Customer)", () -> repository.getOrders(customer));
+    }
+
+    /**
+     * Returns all the orders for the provided customers, together with the associations described by the provided
+     * fetch plan.
+     *
+     * @param customer The customer to return the order of.
+     * @param plan     The associations to load together with the orders.
+     * @return The complete list of the orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer, OrderFetchPlan plan)
+    {
+        return record("getOrders(Customer, OrderFetchPlan)", () -> repository.getOrders(customer, plan));
+    }
+
+    /**
+     * Returns the orders for the provided customer with an id greater than the provided id, sorted by their id. The
+     * last id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the orders of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of orders to return.
+     * @return The page of orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer, long after, int limit)
+    {
+        return record("getOrders(Customer, long, int)", () -> repository.getOrders(customer, after, limit));
+    }
+
+    /**
+     * Returns a stream of the orders for the provided customer. The orders are read from a database cursor, and are
+     * detached before they are returned. The returned stream must be closed.
+     *
+     * @param customer  The customer to return the orders of.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders belonging to the provided customer.
+     */
+    @Override public Stream<Order> streamOrders(Customer customer, int fetchSize)
+    {
+        return record("streamOrders(Customer, int)", () -> repository.streamOrders(customer, fetchSize));
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer, sorted by the id of the order.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @return The summaries of the orders belonging to the provided customer.
+     */
+    @Override public List<OrderSummary> getOrderSummaries(Customer customer)
+    {
+        return record("getOrderSummaries(Customer)", () -> repository.getOrderSummaries(customer));
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer with an id greater than the provided id,
+     * sorted by the id of the order.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of summaries to return.
+     * @return The page of order summaries.
+     */
+    @Override public List<OrderSummary> getOrderSummaries(Customer customer, long after, int limit)
+    {
+        return record("getOrderSummaries(Customer, long, int)",
+                      () -> repository.getOrderSummaries(customer, after, limit));
+    }
+
+    /**
+     * Creates a new {@code OrderLine} and adds it to the provided {@code Order}.
+     *
+     * @param order    The order to add the newly created {@code OrderLine} to.
+     * @param quantity The number of the provided item to include in the {@code OrderLine}.
+     * @param itemType The {@code ItemType} to place in the {@code OrderLine}.
+     * @return The newly created {@code OrderLine} entity.
+     */
+    @Override public OrderLine createOrderLine(Order order, long quantity, ItemType itemType)
+    {
+        return record("createOrderLine(Order, long, ItemType)", () -> repository.createOrderLine(order, quantity, itemType));
+    }
+
+    /**
+     * Adds the provided lines to the provided {@code Order}, writing them in a single transaction.
+     *
+     * @param order The order to add the lines to. The order must have been persisted already.
+     * @param lines The lines to add, which must not have been persisted already.
+     * @return The provided lines, which have been assigned their ids.
+     */
+    @Override public List<OrderLine> createOrderLines(Order order, List<OrderLine> lines)
+    {
+        return record("createOrderLines(Order, List<OrderLine>)", () -> repository.createOrderLines(order, lines));
+    }
+
+    /**
+     * Creates a new {@code ItemType}.
+     *
+     * @param name        The name of the {@code ItemType} to create.
+     * @param description The description of the {@code ItemType} to create.
+     * @param price       The price of the {@code ItemType} to create.
+     * @return The newly created {@code ItemType} entity.
+     */
+    @Override public ItemType createItemType(String name, String description, long price)
+    {
+        return record("createItemType(String, String, long)", () -> repository.createItemType(name, description, price));
+    }
+
+    /**
+     * Returns the total price of the provided {@code Order}.
+     *
+     * @param order The order to find the total of.
+     * @return The total price of the provided {@code Order.}
+     */
+    @Override public long getTotal(Order order)
+    {
+        return record("getTotal(Order)", () -> repository.getTotal(order));
+    }
+
+    /**
+     * Returns the totals of the provided orders.
+     *
+     * @param orders The orders to find the totals of.
+     * @return The totals of the provided orders, mapped by the id of the order.
+     */
+    @Override public OrderTotals getTotals(Collection<Order> orders)
+    {
+        return record("getTotals(Collection<Order>)", () -> repository.getTotals(orders));
+    }
+
+    /**
+     * Returns the totals of the orders belonging to the provided customer.
+     *
+     * @param customer The customer to find the order totals of.
+     * @return The totals of the orders belonging to the provided customer, mapped by the id of the order.
+     */
+    @Override public OrderTotals getTotals(Customer customer)
+    {
+        return record("getTotals(Customer)", () -> repository.getTotals(customer));
+    }
+
+    /**
+     * Returns the {@code ItemType} with the provided id.
+     *
+     * @param id The id of the {@code ItemType} to return.
+     * @return The {@code ItemType} with the provided id, {@code null} when no such {@code ItemType} exists.
+     */
+    @Override public ItemType getItem(long id)
+    {
+        return record("getItem(long)", () -> repository.getItem(id));
+    }
+
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<ItemType> getItems(long[] ids)
+    {
+        return record("getItems(long[])", () -> repository.getItems(ids));
+    }
+
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<ItemType> getItems(Collection<Long> ids)
+    {
+        return record("getItems(Collection<Long>)", () -> repository.getItems(ids));
+    }
+
+    /**
+     * Returns all the items in the repository.
+     *
+     * @return The complete list of the items in the repository.
+     */
+    @Override public List<ItemType> getItems()
+    {
+        return record("getItems()", () -> repository.getItems());
+    }
+
+    /**
+     * Returns the items with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which items are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of items to return.
+     * @return The page of items.
+     */
+    @Override public List<ItemType> getItems(long after, int limit)
+    {
+        return record("getItems(long, int)", () -> repository.getItems(after, limit));
+    }
+
+    /**
+     * Returns a stream of all the items. The items are read from a database cursor, and are detached before they are
+     * returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of items.
+     */
+    @Override public Stream<ItemType> streamItems(int fetchSize)
+    {
+        return record("streamItems(int)", () -> repository.streamItems(fetchSize));
+    }
+
+    /**
+     * Performs the provided operation, and records its metrics.
+     *
+     * @param method    The name of the operation.
+     * @param operation The operation to perform.
+     * @param <T>       The type of the result of the operation.
+     * @return The result of the operation.
+     */
+    private <T> T record(String method, Supplier<T> operation)
+    {
+        MethodRecorder   recorder  = metrics.recorder(method);
+        MetricsRecording recording = MetricsRecording.start();
+        long             start     = System.nanoTime();
+        boolean          failed    = true;
+        try {
+            T result = operation.get();
+            failed = false;
+            return result;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            recording.stop();
+            recorder.record(nanos, failed, recording);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.tvestergaard.ca;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies. Each power of two is divided into {@link #SUB_BUCKETS} buckets, so that the
+ * reported percentiles are within 12.5% of the recorded latencies. Recording a latency never blocks.
+ */
+final class LatencyHistogram
+{
+
+    /**
+     * The number of bits used to divide each power of two into buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of buckets each power of two is divided into.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of latencies recorded in each bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(index(Long.MAX_VALUE) + 1);
+
+    /**
+     * The longest recorded latency, in nanoseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the provided latency.
+     *
+     * @param nanos The latency to record, in nanoseconds.
+     */
+    void record(long nanos)
+    {
+        long latency = Math.max(0, nanos);
+        buckets.incrementAndGet(index(latency));
+        if (latency > max.get())
+            max.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Returns the latency below which the provided fraction of the recorded latencies fall.
+     *
+     * @param fraction The fraction of the recorded latencies, between {@code 0} and {@code 1}.
+     * @param unit     The unit of the returned latency.
+     * @return The latency below which the provided fraction of the recorded latencies fall, {@code 0} when no
+     * latencies have been recorded.
+     */
+    long getPercentile(double fraction, TimeUnit unit)
+    {
+        long[] counts = new long[buckets.length()];
+        long   total  = 0;
+        for (int x = 0; x < counts.length; x++) {
+            counts[x] = buckets.get(x);
+            total += counts[x];
+        }
+
+        if (total == 0)
+            return 0;
+
+        long rank       = Math.max(1, (long) Math.ceil(fraction * total));
+        long cumulative = 0;
+        for (int x = 0; x < counts.length; x++) {
+            cumulative += counts[x];
+            if (cumulative >= rank)
+                return unit.convert(Math.min(upperBound(x), max.get()), TimeUnit.NANOSECONDS);
+        }
+
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the longest recorded latency.
+     *
+     * @param unit The unit of the returned latency.
+     * @return The longest recorded latency, {@code 0} when no latencies have been recorded.
+     */
+    long getMax(TimeUnit unit)
+    {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the index of the bucket containing the provided latency.
+     *
+     * @param nanos The latency, in nanoseconds.
+     * @return The index of the bucket containing the provided latency.
+     */
+    private static int index(long nanos)
+    {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift     = magnitude - SUB_BUCKET_BITS;
+
+        return (shift + 1) * SUB_BUCKETS + (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest latency contained in the bucket with the provided index.
+     *
+     * @param index The index of the bucket.
+     * @return The largest latency contained in the bucket, in nanoseconds.
+     */
+    private static long upperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        int  shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,182 @@
+package com.tvestergaard.ca;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the metrics recorded for a single {@link Repository} method by {@link InstrumentedRepository}. All
+ * times are in microseconds.
+ */
+public class MethodMetrics
+{
+
+    /**
+     * The name of the method.
+     */
+    private final String method;
+
+    /**
+     * The number of completed calls.
+     */
+    private final long calls;
+
+    /**
+     * The number of calls that threw an exception.
+     */
+    private final long errors;
+
+    /**
+     * The median latency of the calls.
+     */
+    private final long latencyP50;
+
+    /**
+     * The 99th percentile latency of the calls.
+     */
+    private final long latencyP99;
+
+    /**
+     * The longest latency of the calls.
+     */
+    private final long latencyMax;
+
+    /**
+     * The number of SQL statements and batches executed by the calls.
+     */
+    private final long statements;
+
+    /**
+     * The number of entities loaded by the calls.
+     */
+    private final long entitiesLoaded;
+
+    /**
+     * The time spent flushing during the calls.
+     */
+    private final long flushTime;
+
+    /**
+     * Creates a new {@link MethodMetrics}.
+     *
+     * @param method         The name of the method.
+     * @param calls          The number of completed calls.
+     * @param errors         The number of calls that threw an exception.
+     * @param latencyP50     The median latency of the calls.
+     * @param latencyP99     The 99th percentile latency of the calls.
+     * @param latencyMax     The longest latency of the calls.
+     * @param statements     The number of SQL statements and batches executed by the calls.
+     * @param entitiesLoaded The number of entities loaded by the calls.
+     * @param flushTime      The time spent flushing during the calls.
+     */
+    @ConstructorProperties({"method", "calls", "errors", "latencyP50", "latencyP99", "latencyMax", "statements",
+                            "entitiesLoaded", "flushTime"})
+    public MethodMetrics(String method, long calls, long errors, long latencyP50, long latencyP99, long latencyMax,
+                         long statements, long entitiesLoaded, long flushTime)
+    {
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.latencyP50 = latencyP50;
+        this.latencyP99 = latencyP99;
+        this.latencyMax = latencyMax;
+        this.statements = statements;
+        this.entitiesLoaded = entitiesLoaded;
+        this.flushTime = flushTime;
+    }
+
+    /**
+     * Returns the name of the method.
+     *
+     * @return The name of the method, including its parameter types.
+     */
+    public String getMethod()
+    {
+        return this.method;
+    }
+
+    /**
+     * Returns the number of completed calls, including the calls that threw an exception.
+     *
+     * @return The number of completed calls.
+     */
+    public long getCalls()
+    {
+        return this.calls;
+    }
+
+    /**
+     * Returns the number of calls that threw an exception.
+     *
+     * @return The number of calls that threw an exception.
+     */
+    public long getErrors()
+    {
+        return this.errors;
+    }
+
+    /**
+     * Returns the median latency of the calls.
+     *
+     * @return The median latency of the calls, in microseconds.
+     */
+    public long getLatencyP50()
+    {
+        return this.latencyP50;
+    }
+
+    /**
+     * Returns the 99th percentile latency of the calls.
+     *
+     * @return The 99th percentile latency of the calls, in microseconds.
+     */
+    public long getLatencyP99()
+    {
+        return this.latencyP99;
+    }
+
+    /**
+     * Returns the longest latency of the calls.
+     *
+     * @return The longest latency of the calls, in microseconds.
+     */
+    public long getLatencyMax()
+    {
+        return this.latencyMax;
+    }
+
+    /**
+     * Returns the number of SQL statements and batches executed by the calls.
+     *
+     * @return The number of SQL statements and batches executed by the calls.
+     */
+    public long getStatements()
+    {
+        return this.statements;
+    }
+
+    /**
+     * Returns the number of entities loaded by the calls, including entities read from the second-level cache.
+     *
+     * @return The number of entities loaded by the calls.
+     */
+    public long getEntitiesLoaded()
+    {
+        return this.entitiesLoaded;
+    }
+
+    /**
+     * Returns the time spent flushing during the calls.
+     *
+     * @return The time spent flushing during the calls, in microseconds.
+     */
+    public long getFlushTime()
+    {
+        return this.flushTime;
+    }
+
+    @Override public String toString()
+    {
+        return method + "{calls=" + calls + ", errors=" + errors + ", p50=" + latencyP50 + "us, p99=" + latencyP99 +
+               "us, max=" + latencyMax + "us, statements=" + statements + ", entitiesLoaded=" + entitiesLoaded +
+               ", flushTime=" + flushTime + "us}";
+    }
+}
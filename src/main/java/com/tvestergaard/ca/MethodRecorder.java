@@ -0,0 +1,78 @@
+package com.tvestergaard.ca;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free recorder of the calls made to a single {@link Repository} method.
+ */
+final class MethodRecorder
+{
+
+    /**
+     * The number of completed calls.
+     */
+    private final LongAdder calls = new LongAdder();
+
+    /**
+     * The number of calls that threw an exception.
+     */
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * The number of SQL statements and batches executed by the calls.
+     */
+    private final LongAdder statements = new LongAdder();
+
+    /**
+     * The number of entities loaded by the calls.
+     */
+    private final LongAdder entities = new LongAdder();
+
+    /**
+     * The time spent flushing during the calls, in nanoseconds.
+     */
+    private final LongAdder flushNanos = new LongAdder();
+
+    /**
+     * The latencies of the calls.
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Records a completed call.
+     *
+     * @param nanos     The latency of the call, in nanoseconds.
+     * @param failed    Whether the call threw an exception.
+     * @param recording The statements, entities and flush time recorded during the call.
+     */
+    void record(long nanos, boolean failed, MetricsRecording recording)
+    {
+        calls.increment();
+        if (failed)
+            errors.increment();
+        statements.add(recording.statements);
+        entities.add(recording.entities);
+        flushNanos.add(recording.flushNanos);
+        latency.record(nanos);
+    }
+
+    /**
+     * Returns the metrics recorded so far.
+     *
+     * @param method The name of the method.
+     * @return The metrics recorded so far.
+     */
+    MethodMetrics snapshot(String method)
+    {
+        return new MethodMetrics(method,
+                                 calls.sum(),
+                                 errors.sum(),
+                                 latency.getPercentile(0.5, TimeUnit.MICROSECONDS),
+                                 latency.getPercentile(0.99, TimeUnit.MICROSECONDS),
+                                 latency.getMax(TimeUnit.MICROSECONDS),
+                                 statements.sum(),
+                                 entities.sum(),
+                                 TimeUnit.NANOSECONDS.toMicros(flushNanos.sum()));
+    }
+}
@@ -0,0 +1,37 @@
+package com.tvestergaard.ca;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Records the entities loaded by every session into the {@link MetricsRecording} of the current thread. The
+ * integrator is discovered by Hibernate using {@code META-INF/services}.
+ */
+public class MetricsIntegrator implements Integrator
+{
+
+    @Override
+    public void integrate(Metadata metadata,
+                          SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry)
+    {
+        PostLoadEventListener listener = event -> {
+            MetricsRecording recording = MetricsRecording.current();
+            if (recording != null)
+                recording.entities++;
+        };
+
+        serviceRegistry.getService(EventListenerRegistry.class).appendListeners(EventType.POST_LOAD, listener);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry)
+    {
+
+    }
+}
@@ -0,0 +1,84 @@
+package com.tvestergaard.ca;
+
+/**
+ * The SQL statements, loaded entities and flush time recorded on the current thread while a {@link Repository}
+ * operation is instrumented by {@link InstrumentedRepository}. Recordings may be nested, in which case the outer
+ * recording includes the values of the inner recording.
+ */
+final class MetricsRecording
+{
+
+    /**
+     * The recording of the current thread.
+     */
+    private static final ThreadLocal<MetricsRecording> current = new ThreadLocal<>();
+
+    /**
+     * The recording that was active when this recording was started.
+     */
+    private final MetricsRecording outer;
+
+    /**
+     * The number of SQL statements and batches executed.
+     */
+    long statements;
+
+    /**
+     * The number of entities loaded.
+     */
+    long entities;
+
+    /**
+     * The time spent flushing, in nanoseconds.
+     */
+    long flushNanos;
+
+    /**
+     * Creates a new {@link MetricsRecording}.
+     *
+     * @param outer The recording that was active when this recording was started.
+     */
+    private MetricsRecording(MetricsRecording outer)
+    {
+        this.outer = outer;
+    }
+
+    /**
+     * Starts a new recording on the current thread.
+     *
+     * @return The new recording.
+     */
+    static MetricsRecording start()
+    {
+        MetricsRecording recording = new MetricsRecording(current.get());
+        current.set(recording);
+
+        return recording;
+    }
+
+    /**
+     * Returns the recording of the current thread.
+     *
+     * @return The recording of the current thread, {@code null} when no recording is active.
+     */
+    static MetricsRecording current()
+    {
+        return current.get();
+    }
+
+    /**
+     * Stops the recording, and restores the recording that was active when this recording was started.
+     */
+    void stop()
+    {
+        if (outer == null) {
+            current.remove();
+            return;
+        }
+
+        outer.statements += statements;
+        outer.entities += entities;
+        outer.flushNanos += flushNanos;
+        current.set(outer);
+    }
+}
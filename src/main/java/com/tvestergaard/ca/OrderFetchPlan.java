@@ -0,0 +1,44 @@
+package com.tvestergaard.ca;
+
+/**
+ * The associations to load together with an order. The associations are loaded in the same query as the order, so
+ * they can be accessed after the {@code EntityManager} has been closed.
+ */
+public enum OrderFetchPlan
+{
+
+    /**
+     * Loads the order without any of its associations.
+     */
+    HEADER("Order.header"),
+
+    /**
+     * Loads the order together with its lines.
+     */
+    LINES("Order.lines"),
+
+    /**
+     * Loads the order together with its customer, its lines and the items of its lines.
+     */
+    DETAILS("Order.details");
+
+    /**
+     * The name of the entity graph that describes the fetch plan.
+     */
+    private final String graph;
+
+    OrderFetchPlan(String graph)
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the name of the entity graph that describes the fetch plan.
+     *
+     * @return The name of the entity graph that describes the fetch plan.
+     */
+    String getGraph()
+    {
+        return this.graph;
+    }
+}
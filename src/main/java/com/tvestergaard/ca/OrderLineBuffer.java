@@ -0,0 +1,392 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Write-behind buffer in front of {@link Repository#createOrderLine(Order, long, ItemType)}. The lines added to an
+ * order are collected in memory, and written using {@link Repository#createOrderLines(Order, List)} in a single
+ * transaction, when the order has {@code maxLines} pending lines, when the first pending line of the order is older
+ * than {@code maxDelay}, or when the order is closed using {@link #closeOrder(Order)}.
+ * <p>
+ * Pending lines are only durable once they have been flushed. They are lost if the process stops without calling
+ * {@link #close()}. Lines flushed because of the size or time thresholds, or by {@link #close()}, are not retried
+ * when the flush fails. Instead they are passed to the error handler together with the exception. Failures of
+ * {@link #closeOrder(Order)} are thrown to the caller.
+ * <p>
+ * The lines are written against a copy of the order holding only its id, so that a flush on the timer thread never
+ * changes the order of the caller while the caller is using it. The new total and version of the order are copied to
+ * the order of the caller while holding the lock of the buffer, so they are visible to the caller once it has called
+ * the buffer again, for example using {@link #closeOrder(Order)}.
+ */
+public class OrderLineBuffer implements AutoCloseable
+{
+
+    /**
+     * The repository the lines are written to.
+     */
+    private final Repository repository;
+
+    /**
+     * The number of pending lines of an order, that causes the lines to be flushed.
+     */
+    private final int maxLines;
+
+    /**
+     * The longest time a line is pending, in nanoseconds.
+     */
+    private final long maxDelayNanos;
+
+    /**
+     * Receives the lines that could not be flushed, together with the cause.
+     */
+    private final BiConsumer<List<OrderLine>, RuntimeException> errorHandler;
+
+    /**
+     * Flushes the orders that reach the time threshold.
+     */
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * The pending lines, mapped by the id of their order. Guarded by {@code this}.
+     */
+    private final Map<Long, Pending> pending = new HashMap<>();
+
+    /**
+     * The total number of pending lines. Guarded by {@code this}.
+     */
+    private int pendingLines;
+
+    /**
+     * Whether the buffer has been closed. Guarded by {@code this}.
+     */
+    private boolean closed;
+
+    /**
+     * The number of completed flushes.
+     */
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * The number of flushes that failed.
+     */
+    private final LongAdder failedFlushes = new LongAdder();
+
+    /**
+     * The number of lines written by the flushes.
+     */
+    private final LongAdder flushedLines = new LongAdder();
+
+    /**
+     * The latencies of the flushes.
+     */
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    /**
+     * Creates a new {@link OrderLineBuffer}.
+     *
+     * @param repository   The repository the lines are written to.
+     * @param maxLines     The number of pending lines of an order, that causes the lines to be flushed.
+     * @param maxDelay     The longest time a line is pending before it is flushed.
+     * @param unit         The unit of {@code maxDelay}.
+     * @param errorHandler Receives the lines that could not be flushed by the size or time thresholds, or by
+     *                     {@link #close()}, together with the cause.
+     */
+    public OrderLineBuffer(Repository repository,
+                           int maxLines,
+                           long maxDelay,
+                           TimeUnit unit,
+                           BiConsumer<List<OrderLine>, RuntimeException> errorHandler)
+    {
+        if (maxLines < 1)
+            throw new IllegalArgumentException("The maximum number of lines must be positive.");
+
+        this.repository = repository;
+        this.maxLines = maxLines;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.errorHandler = errorHandler;
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "order-line-buffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Adds a new line to the provided order. The line is written when the order is flushed.
+     *
+     * @param order    The order to add the line to. The order must have been persisted already.
+     * @param quantity The number of the provided item to include in the line.
+     * @param itemType The {@code ItemType} to place in the line.
+     * @return The new line, which is assigned its id when the order is flushed.
+     * @throws IllegalArgumentException When the order has not been persisted.
+     * @throws IllegalStateException    When the buffer has been closed.
+     */
+    public OrderLine createOrderLine(Order order, long quantity, ItemType itemType)
+    {
+        if (order.getId() == 0)
+            throw new IllegalArgumentException("The order must have been persisted.");
+
+        OrderLine line = new OrderLine(quantity, itemType);
+        Pending   full = null;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("The buffer has been closed.");
+
+            Pending lines = pending.get(order.getId());
+            if (lines == null) {
+                lines = new Pending(order);
+                pending.put(order.getId(), lines);
+                Pending scheduled = lines;
+                lines.timeout = timer.schedule(() -> flushExpired(scheduled), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+
+            lines.lines.add(line);
+            pendingLines++;
+            if (lines.lines.size() >= maxLines)
+                full = remove(order.getId());
+        }
+
+        if (full != null)
+            flush(full, false);
+
+        return line;
+    }
+
+    /**
+     * Flushes the pending lines of the provided order, for example when the order is completed.
+     *
+     * @param order The order to flush.
+     * @return The lines that were written, which have been assigned their ids.
+     * @throws RuntimeException When the lines could not be written. The lines are discarded.
+     */
+    public List<OrderLine> closeOrder(Order order)
+    {
+        Pending lines;
+        synchronized (this) {
+            lines = remove(order.getId());
+        }
+
+        if (lines == null)
+            return new ArrayList<>();
+
+        flush(lines, true);
+        return lines.lines;
+    }
+
+    /**
+     * Returns the number of lines that have not been flushed yet.
+     *
+     * @return The number of lines that have not been flushed yet.
+     */
+    public synchronized int getPendingLines()
+    {
+        return this.pendingLines;
+    }
+
+    /**
+     * Returns the number of orders with lines that have not been flushed yet.
+     *
+     * @return The number of orders with lines that have not been flushed yet.
+     */
+    public synchronized int getPendingOrders()
+    {
+        return pending.size();
+    }
+
+    /**
+     * Returns the number of completed flushes, including the flushes that failed.
+     *
+     * @return The number of completed flushes.
+     */
+    public long getFlushCount()
+    {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the number of flushes that failed.
+     *
+     * @return The number of flushes that failed.
+     */
+    public long getFailedFlushCount()
+    {
+        return failedFlushes.sum();
+    }
+
+    /**
+     * Returns the number of lines written by the flushes.
+     *
+     * @return The number of lines written by the flushes.
+     */
+    public long getFlushedLines()
+    {
+        return flushedLines.sum();
+    }
+
+    /**
+     * Returns the latency below which the provided fraction of the flushes completed.
+     *
+     * @param fraction The fraction of the flushes, between {@code 0} and {@code 1}.
+     * @param unit     The unit of the returned latency.
+     * @return The latency below which the provided fraction of the flushes completed, {@code 0} when no flushes have
+     * completed.
+     */
+    public long getFlushLatency(double fraction, TimeUnit unit)
+    {
+        return flushLatency.getPercentile(fraction, unit);
+    }
+
+    /**
+     * Returns the longest latency of the flushes.
+     *
+     * @param unit The unit of the returned latency.
+     * @return The longest latency of the flushes, {@code 0} when no flushes have completed.
+     */
+    public long getMaxFlushLatency(TimeUnit unit)
+    {
+        return flushLatency.getMax(unit);
+    }
+
+    /**
+     * Flushes the pending lines of every order, and stops accepting new lines. Lines that could not be flushed are
+     * passed to the error handler. Returns when every flush has completed, including a flush started by the time
+     * threshold before the buffer was closed, unless the calling thread is interrupted while waiting.
+     */
+    @Override public void close()
+    {
+        List<Pending> remaining;
+        synchronized (this) {
+            if (closed)
+                return;
+
+            closed = true;
+            remaining = new ArrayList<>(pending.values());
+            for (Pending lines : remaining)
+                lines.timeout.cancel(false);
+            pending.clear();
+            pendingLines = 0;
+        }
+
+        timer.shutdown();
+        for (Pending lines : remaining)
+            flush(lines, false);
+
+        try {
+            timer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Flushes the provided lines, when they are still pending after the time threshold.
+     *
+     * @param lines The lines to flush.
+     */
+    private void flushExpired(Pending lines)
+    {
+        synchronized (this) {
+            if (pending.get(lines.id) != lines)
+                return;
+            remove(lines.id);
+        }
+
+        flush(lines, false);
+    }
+
+    /**
+     * Removes the pending lines of the provided order, and cancels their time threshold. Must be called while
+     * holding the lock of the buffer.
+     *
+     * @param order The id of the order.
+     * @return The removed lines, {@code null} when the order has no pending lines.
+     */
+    private Pending remove(long order)
+    {
+        Pending lines = pending.remove(order);
+        if (lines == null)
+            return null;
+
+        lines.timeout.cancel(false);
+        pendingLines -= lines.lines.size();
+        return lines;
+    }
+
+    /**
+     * Writes the provided lines in a single transaction, against a copy of their order. The new total and version of
+     * the order are then copied to the order of the caller while holding the lock of the buffer.
+     *
+     * @param lines   The lines to write.
+     * @param rethrow Whether failures are thrown to the caller, instead of being passed to the error handler.
+     */
+    private void flush(Pending lines, boolean rethrow)
+    {
+        long  start = System.nanoTime();
+        Order copy  = new Order();
+        copy.setId(lines.id);
+        try {
+            repository.createOrderLines(copy, lines.lines);
+            flushedLines.add(lines.lines.size());
+            synchronized (this) {
+                lines.order.setTotal(copy.getTotal());
+                // The version is only known to repositories that commit the lines, such as the Facade
+                if (copy.getVersion() != 0)
+                    lines.order.setVersion(copy.getVersion());
+            }
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            if (rethrow)
+                throw e;
+            errorHandler.accept(lines.lines, e);
+        } finally {
+            flushes.increment();
+            flushLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The pending lines of a single order.
+     */
+    private static class Pending
+    {
+
+        /**
+         * The id of the order the lines are added to.
+         */
+        private final long id;
+
+        /**
+         * The order of the caller, that is only changed while holding the lock of the buffer.
+         */
+        private final Order order;
+
+        /**
+         * The lines added to the order.
+         */
+        private final List<OrderLine> lines = new ArrayList<>();
+
+        /**
+         * Flushes the lines when the time threshold is reached.
+         */
+        private ScheduledFuture<?> timeout;
+
+        Pending(Order order)
+        {
+            this.id = order.getId();
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.tvestergaard.ca;
+
+import java.util.Objects;
+
+/**
+ * Read-only summary of an order, containing what is needed to list the orders of a customer. Summaries are created
+ * directly from the results of a query, so they are never managed by an {@code EntityManager}, and reading them
+ * does not load the order, its customer or its lines.
+ */
+public final class OrderSummary
+{
+
+    /**
+     * The id of the order.
+     */
+    private final long orderId;
+
+    /**
+     * The id of the customer who owns the order.
+     */
+    private final long customerId;
+
+    /**
+     * The name of the customer who owns the order.
+     */
+    private final String customerName;
+
+    /**
+     * The number of lines in the order.
+     */
+    private final long lineCount;
+
+    /**
+     * The total price of the order.
+     */
+    private final long total;
+
+    /**
+     * Creates a new {@link OrderSummary}. Called by the {@code Order.summaries} queries.
+     *
+     * @param orderId      The id of the order.
+     * @param customerId   The id of the customer who owns the order.
+     * @param customerName The name of the customer who owns the order.
+     * @param lineCount    The number of lines in the order.
+     * @param total        The total price of the order.
+     */
+    public OrderSummary(long orderId, long customerId, String customerName, long lineCount, long total)
+    {
+        this.orderId = orderId;
+        this.customerId = customerId;
+        this.customerName = customerName;
+        this.lineCount = lineCount;
+        this.total = total;
+    }
+
+    /**
+     * Returns the id of the order.
+     *
+     * @return The id of the order.
+     */
+    public long getOrderId()
+    {
+        return this.orderId;
+    }
+
+    /**
+     * Returns the id of the customer who owns the order.
+     *
+     * @return The id of the customer who owns the order.
+     */
+    public long getCustomerId()
+    {
+        return this.customerId;
+    }
+
+    /**
+     * Returns the name of the customer who owns the order.
+     *
+     * @return The name of the customer who owns the order.
+     */
+    public String getCustomerName()
+    {
+        return this.customerName;
+    }
+
+    /**
+     * Returns the number of lines in the order.
+     *
+     * @return The number of lines in the order.
+     */
+    public long getLineCount()
+    {
+        return this.lineCount;
+    }
+
+    /**
+     * Returns the total price of the order.
+     *
+     * @return The total price of the order.
+     */
+    public long getTotal()
+    {
+        return this.total;
+    }
+
+    @Override public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof OrderSummary)) return false;
+        OrderSummary summary = (OrderSummary) o;
+        return orderId == summary.orderId &&
+               customerId == summary.customerId &&
+               lineCount == summary.lineCount &&
+               total == summary.total &&
+               Objects.equals(customerName, summary.customerName);
+    }
+
+    @Override public int hashCode()
+    {
+        return Long.hashCode(orderId);
+    }
+
+    @Override public String toString()
+    {
+        return "OrderSummary{" +
+               "orderId=" + orderId +
+               ", customerId=" + customerId +
+               ", customerName='" + customerName + '\'' +
+               ", lineCount=" + lineCount +
+               ", total=" + total +
+               '}';
+    }
+}
@@ -0,0 +1,84 @@
+package com.tvestergaard.ca;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds and repairs orders whose maintained total no longer matches the sum of their lines, for example because
+ * lines were written without using a {@link Repository}, or because the total column was added to existing orders.
+ * The orders are examined in pages sorted by their id, and each page is repaired in its own transaction. Each total
+ * is recomputed and written in a single statement, so the job can run while lines are being added.
+ */
+public class OrderTotalVerifier
+{
+
+    /**
+     * The {@code EntityManagerFactory} the orders are read from.
+     */
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * The maximum number of orders repaired in each transaction.
+     */
+    private final int pageSize;
+
+    /**
+     * Creates a new {@link OrderTotalVerifier}.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} the orders are read from.
+     * @param pageSize             The maximum number of orders repaired in each transaction.
+     */
+    public OrderTotalVerifier(EntityManagerFactory entityManagerFactory, int pageSize)
+    {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("The page size must be positive.");
+
+        this.entityManagerFactory = entityManagerFactory;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Returns the ids of the orders whose total does not match the sum of their lines.
+     *
+     * @return The ids of the orders whose total does not match the sum of their lines, sorted by their id.
+     */
+    public List<Long> findDrifted()
+    {
+        List<Long> drifted = new ArrayList<>();
+        try (TransactionalRepository repository = new TransactionalRepository(entityManagerFactory,
+                                                                              TransactionStrategy.READ_ONLY)) {
+            List<Long> page = repository.findDriftedTotals(0, pageSize);
+            while (!page.isEmpty()) {
+                drifted.addAll(page);
+                page = repository.findDriftedTotals(page.get(page.size() - 1), pageSize);
+            }
+        }
+
+        return drifted;
+    }
+
+    /**
+     * Recomputes the totals of the orders whose total does not match the sum of their lines.
+     *
+     * @return The number of orders that were repaired.
+     */
+    public long rebuild()
+    {
+        long repaired = 0;
+        long after    = 0;
+        while (true) {
+            try (TransactionalRepository repository = new TransactionalRepository(entityManagerFactory,
+                                                                                  TransactionStrategy.ROLLBACK)) {
+                List<Long> page = repository.findDriftedTotals(after, pageSize);
+                if (page.isEmpty())
+                    return repaired;
+
+                repository.rebuildTotals(page);
+                repository.commit();
+                repaired += page.size();
+                after = page.get(page.size() - 1);
+            }
+        }
+    }
+}
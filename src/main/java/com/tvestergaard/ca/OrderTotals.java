@@ -0,0 +1,119 @@
+package com.tvestergaard.ca;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable mapping from order ids to order totals. The ids and totals are stored in primitive arrays sorted by the
+ * order id, so lookups neither box nor hash.
+ */
+public class OrderTotals
+{
+
+    /**
+     * The ids of the orders, in ascending order.
+     */
+    private final long[] orders;
+
+    /**
+     * The totals of the orders, where {@code totals[x]} is the total of {@code orders[x]}.
+     */
+    private final long[] totals;
+
+    /**
+     * Creates a new {@link OrderTotals}.
+     *
+     * @param orders The ids of the orders, in ascending order.
+     * @param totals The totals of the orders, where {@code totals[x]} is the total of {@code orders[x]}.
+     */
+    OrderTotals(long[] orders, long[] totals)
+    {
+        this.orders = orders;
+        this.totals = totals;
+    }
+
+    /**
+     * Creates a new {@link OrderTotals} from the rows of a totals query. Each row contains the order id followed by
+     * the order total, and the rows must be sorted by the order id.
+     *
+     * @param rows The rows to create the {@link OrderTotals} from.
+     * @return The resulting {@link OrderTotals}.
+     */
+    static OrderTotals of(List<Object[]> rows)
+    {
+        int    size   = rows.size();
+        long[] orders = new long[size];
+        long[] totals = new long[size];
+        for (int x = 0; x < size; x++) {
+            Object[] row = rows.get(x);
+            orders[x] = ((Number) row[0]).longValue();
+            totals[x] = ((Number) row[1]).longValue();
+        }
+
+        return new OrderTotals(orders, totals);
+    }
+
+    /**
+     * Returns the number of orders in the mapping.
+     *
+     * @return The number of orders in the mapping.
+     */
+    public int size()
+    {
+        return orders.length;
+    }
+
+    /**
+     * Checks if the order with the provided id is included in the mapping.
+     *
+     * @param order The id of the order.
+     * @return {@code true} if the order with the provided id is included in the mapping.
+     */
+    public boolean contains(long order)
+    {
+        return Arrays.binarySearch(orders, order) >= 0;
+    }
+
+    /**
+     * Returns the total of the order with the provided id.
+     *
+     * @param order The id of the order.
+     * @return The total of the order with the provided id, {@code 0} when the order is not included in the mapping.
+     */
+    public long get(long order)
+    {
+        int index = Arrays.binarySearch(orders, order);
+
+        return index < 0 ? 0 : totals[index];
+    }
+
+    /**
+     * Returns the id of the order at the provided index. The orders are sorted by their id.
+     *
+     * @param index The index of the order.
+     * @return The id of the order at the provided index.
+     */
+    public long getOrder(int index)
+    {
+        return orders[index];
+    }
+
+    /**
+     * Returns the total of the order at the provided index. The orders are sorted by their id.
+     *
+     * @param index The index of the order.
+     * @return The total of the order at the provided index.
+     */
+    public long getTotal(int index)
+    {
+        return totals[index];
+    }
+
+    @Override public String toString()
+    {
+        return "OrderTotals{" +
+               "orders=" + Arrays.toString(orders) +
+               ", totals=" + Arrays.toString(totals) +
+               '}';
+    }
+}
@@ -5,7 +5,9 @@ import com.tvestergaard.ca.entities.ItemType;
 import com.tvestergaard.ca.entities.Order;
 import com.tvestergaard.ca.entities.OrderLine;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface Repository
 {
@@ -27,6 +29,22 @@ public interface Repository
      */
     Customer findCustomer(long id);
 
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    EntityLookup<Customer> findCustomers(long[] ids);
+
+    /**
+     * Finds the customers with the provided ids.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    EntityLookup<Customer> findCustomers(Collection<Long> ids);
+
     /**
      * Returns a complete list of customers.
      *
@@ -34,6 +52,25 @@ public interface Repository
      */
     List<Customer> getCustomers();
 
+    /**
+     * Returns the customers with an id greater than the provided id, sorted by their id. The last id of the returned
+     * page is used to retrieve the next page.
+     *
+     * @param after The id after which customers are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of customers to return.
+     * @return The page of customers.
+     */
+    List<Customer> getCustomers(long after, int limit);
+
+    /**
+     * Returns a stream of all the customers. The customers are read from a database cursor, and are detached before
+     * they are returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of customers.
+     */
+    Stream<Customer> streamCustomers(int fetchSize);
+
     /**
      * Creates a new order from the provided arguments.
      *
@@ -42,6 +79,16 @@ public interface Repository
      */
     Order createOrder(Customer customer);
 
+    /**
+     * Creates a new order containing the provided lines. The order and all of its lines are written together.
+     *
+     * @param customer The customer who owns the order.
+     * @param lines    The lines to include in the order. Each line is created using
+     *                 {@link OrderLine#OrderLine(long, ItemType)}, and must not have been persisted already.
+     * @return The newly created order entity.
+     */
+    Order createOrder(Customer customer, List<OrderLine> lines);
+
     /**
      * Returns the order with the provided id.
      *
@@ -50,6 +97,15 @@ public interface Repository
      */
     Order getOrder(long id);
 
+    /**
+     * Returns the order with the provided id, together with the associations described by the provided fetch plan.
+     *
+     * @param id   The id of the order to return.
+     * @param plan The associations to load together with the order.
+     * @return The order with the provided id, {@code null} when no such order exists.
+     */
+    Order getOrder(long id, OrderFetchPlan plan);
+
     /**
      * Returns all the orders in the repository.
      *
@@ -57,6 +113,33 @@ public interface Repository
      */
     List<Order> getOrders();
 
+    /**
+     * Returns all the orders in the repository, together with the associations described by the provided fetch plan.
+     *
+     * @param plan The associations to load together with the orders.
+     * @return The complete list of the orders in the repository.
+     */
+    List<Order> getOrders(OrderFetchPlan plan);
+
+    /**
+     * Returns the orders with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of orders to return.
+     * @return The page of orders.
+     */
+    List<Order> getOrders(long after, int limit);
+
+    /**
+     * Returns a stream of all the orders. The orders are read from a database cursor, and are detached before they
+     * are returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders.
+     */
+    Stream<Order> streamOrders(int fetchSize);
+
     /**
      * Returns all the orders for the provided customers.
      *
@@ -65,6 +148,57 @@ public interface Repository
      */
     List<Order> getOrders(Customer customer);
 
+    /**
+     * Returns all the orders for the provided customers, together with the associations described by the provided
+     * fetch plan.
+     *
+     * @param customer The customer to return the order of.
+     * @param plan     The associations to load together with the orders.
+     * @return The complete list of the orders belonging to the provided customer.
+     */
+    List<Order> getOrders(Customer customer, OrderFetchPlan plan);
+
+    /**
+     * Returns the orders for the provided customer with an id greater than the provided id, sorted by their id. The
+     * last id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the orders of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of orders to return.
+     * @return The page of orders belonging to the provided customer.
+     */
+    List<Order> getOrders(Customer customer, long after, int limit);
+
+    /**
+     * Returns a stream of the orders for the provided customer. The orders are read from a database cursor, and are
+     * detached before they are returned. The returned stream must be closed.
+     *
+     * @param customer  The customer to return the orders of.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders belonging to the provided customer.
+     */
+    Stream<Order> streamOrders(Customer customer, int fetchSize);
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer, sorted by the id of the order. The
+     * summaries are read using a single query, without loading the orders into the persistence context.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @return The summaries of the orders belonging to the provided customer.
+     */
+    List<OrderSummary> getOrderSummaries(Customer customer);
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer with an id greater than the provided id,
+     * sorted by the id of the order. The last order id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of summaries to return.
+     * @return The page of order summaries.
+     */
+    List<OrderSummary> getOrderSummaries(Customer customer, long after, int limit);
+
     /**
      * Creates a new {@code OrderLine} and adds it to the provided {@code Order}.
      *
@@ -75,6 +209,16 @@ public interface Repository
      */
     OrderLine createOrderLine(Order order, long quantity, ItemType itemType);
 
+    /**
+     * Adds the provided lines to the provided {@code Order}, writing them in a single transaction.
+     *
+     * @param order The order to add the lines to. The order must have been persisted already.
+     * @param lines The lines to add. Each line is created using {@link OrderLine#OrderLine(long, ItemType)}, and must
+     *              not have been persisted already.
+     * @return The provided lines, which have been assigned their ids.
+     */
+    List<OrderLine> createOrderLines(Order order, List<OrderLine> lines);
+
     /**
      * Creates a new {@code ItemType}.
      *
@@ -93,6 +237,22 @@ public interface Repository
      */
     long getTotal(Order order);
 
+    /**
+     * Returns the totals of the provided orders.
+     *
+     * @param orders The orders to find the totals of.
+     * @return The totals of the provided orders, mapped by the id of the order.
+     */
+    OrderTotals getTotals(Collection<Order> orders);
+
+    /**
+     * Returns the totals of the orders belonging to the provided customer.
+     *
+     * @param customer The customer to find the order totals of.
+     * @return The totals of the orders belonging to the provided customer, mapped by the id of the order.
+     */
+    OrderTotals getTotals(Customer customer);
+
     /**
      * Returns the {@code ItemType} with the provided id.
      *
@@ -101,10 +261,45 @@ public interface Repository
      */
     ItemType getItem(long id);
 
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    EntityLookup<ItemType> getItems(long[] ids);
+
+    /**
+     * Returns the items with the provided ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    EntityLookup<ItemType> getItems(Collection<Long> ids);
+
     /**
      * Returns all the items in the repository.
      *
      * @return The complete list of the items in the repository.
      */
     List<ItemType> getItems();
+
+    /**
+     * Returns the items with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which items are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of items to return.
+     * @return The page of items.
+     */
+    List<ItemType> getItems(long after, int limit);
+
+    /**
+     * Returns a stream of all the items. The items are read from a database cursor, and are detached before they are
+     * returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of items.
+     */
+    Stream<ItemType> streamItems(int fetchSize);
 }
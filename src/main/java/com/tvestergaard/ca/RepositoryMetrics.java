@@ -0,0 +1,115 @@
+package com.tvestergaard.ca;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The metrics recorded by one or more {@link InstrumentedRepository} instances. The metrics can be read using
+ * {@link #getMethods()}, or through JMX after calling {@link #register(String)}.
+ */
+public class RepositoryMetrics implements RepositoryMetricsMXBean
+{
+
+    /**
+     * The recorders of each instrumented method.
+     */
+    private final ConcurrentMap<String, MethodRecorder> methods = new ConcurrentHashMap<>();
+
+    /**
+     * The name the metrics are registered with, {@code null} when the metrics are not registered.
+     */
+    private volatile ObjectName objectName;
+
+    /**
+     * Returns the recorder of the provided method.
+     *
+     * @param method The name of the method.
+     * @return The recorder of the provided method.
+     */
+    MethodRecorder recorder(String method)
+    {
+        MethodRecorder recorder = methods.get(method);
+        if (recorder != null)
+            return recorder;
+
+        return methods.computeIfAbsent(method, name -> new MethodRecorder());
+    }
+
+    /**
+     * Returns the metrics recorded for each instrumented method.
+     *
+     * @return The metrics recorded for each instrumented method, mapped and sorted by the name of the method.
+     */
+    @Override public Map<String, MethodMetrics> getMethods()
+    {
+        Map<String, MethodMetrics> snapshot = new TreeMap<>();
+        methods.forEach((method, recorder) -> snapshot.put(method, recorder.snapshot(method)));
+
+        return snapshot;
+    }
+
+    /**
+     * Returns the metrics recorded for the provided method.
+     *
+     * @param method The name of the method, including its parameter types, for example {@code getOrders(Customer)}.
+     * @return The metrics recorded for the provided method, {@code null} when the method has not been called.
+     */
+    public MethodMetrics getMethod(String method)
+    {
+        MethodRecorder recorder = methods.get(method);
+
+        return recorder == null ? null : recorder.snapshot(method);
+    }
+
+    /**
+     * Discards the metrics recorded so far. Calls in progress may still be recorded into the discarded metrics.
+     */
+    @Override public void reset()
+    {
+        methods.clear();
+    }
+
+    /**
+     * Registers the metrics with the platform {@code MBeanServer}.
+     *
+     * @param name The name to register the metrics with.
+     * @return The resulting {@code ObjectName}.
+     */
+    public ObjectName register(String name)
+    {
+        try {
+            ObjectName objectName = new ObjectName("com.tvestergaard.ca:type=RepositoryMetrics,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register repository metrics " + name, e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform {@code MBeanServer}, when the metrics are registered.
+     */
+    public void unregister()
+    {
+        ObjectName objectName = this.objectName;
+        if (objectName == null)
+            return;
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            this.objectName = null;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister repository metrics " + objectName, e);
+        }
+    }
+}
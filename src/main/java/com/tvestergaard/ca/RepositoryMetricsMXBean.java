@@ -0,0 +1,22 @@
+package com.tvestergaard.ca;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link RepositoryMetrics}.
+ */
+public interface RepositoryMetricsMXBean
+{
+
+    /**
+     * Returns the metrics recorded for each instrumented method.
+     *
+     * @return The metrics recorded for each instrumented method, mapped by the name of the method.
+     */
+    Map<String, MethodMetrics> getMethods();
+
+    /**
+     * Discards the metrics recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,230 @@
+package com.tvestergaard.ca;
+
+import org.hibernate.StaleStateException;
+
+import javax.persistence.OptimisticLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * Retries operations that fail because of an optimistic locking conflict. Between attempts the policy waits for a
+ * random period between zero and an exponentially growing bound, so that operations conflicting on the same entity
+ * do not retry in lockstep. The policy records the number of attempts, conflicts and retries of the operations it
+ * executes, and can be shared between threads.
+ */
+public class RetryPolicy
+{
+
+    /**
+     * The maximum number of times an operation is attempted.
+     */
+    private final int maxAttempts;
+
+    /**
+     * The bound of the period waited before the first retry, in nanoseconds.
+     */
+    private final long baseBackoff;
+
+    /**
+     * The largest bound of the period waited before a retry, in nanoseconds.
+     */
+    private final long maxBackoff;
+
+    /**
+     * The number of attempts made.
+     */
+    private final LongAdder attempts = new LongAdder();
+
+    /**
+     * The number of attempts that failed because of an optimistic locking conflict.
+     */
+    private final LongAdder conflicts = new LongAdder();
+
+    /**
+     * The number of attempts made after a conflict.
+     */
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * The number of operations that still conflicted after the maximum number of attempts.
+     */
+    private final LongAdder exhausted = new LongAdder();
+
+    /**
+     * Creates a new {@link RetryPolicy}.
+     *
+     * @param maxAttempts The maximum number of times an operation is attempted. Use {@code 1} to never retry.
+     * @param baseBackoff The bound of the period waited before the first retry. The bound is doubled for each
+     *                    following retry.
+     * @param maxBackoff  The largest bound of the period waited before a retry.
+     * @param unit        The unit of the provided periods.
+     */
+    public RetryPolicy(int maxAttempts, long baseBackoff, long maxBackoff, TimeUnit unit)
+    {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("The maximum number of attempts must be positive.");
+        if (baseBackoff < 0 || maxBackoff < baseBackoff)
+            throw new IllegalArgumentException("The backoff periods must satisfy 0 <= baseBackoff <= maxBackoff.");
+
+        this.maxAttempts = maxAttempts;
+        this.baseBackoff = unit.toNanos(baseBackoff);
+        this.maxBackoff = unit.toNanos(maxBackoff);
+    }
+
+    /**
+     * Creates a new {@link RetryPolicy} that never retries, but still records conflicts.
+     *
+     * @return The new {@link RetryPolicy}.
+     */
+    public static RetryPolicy never()
+    {
+        return new RetryPolicy(1, 0, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Executes the provided operation, attempting it again when it fails because of an optimistic locking conflict.
+     * Each attempt must be performed in a new transaction.
+     *
+     * @param operation The operation to execute. The operation is provided the number of the attempt, starting at
+     *                  {@code 1}, so that it can read the current state of the entities it changes when retried.
+     * @param <T>       The type of result returned by the operation.
+     * @return The result of the operation.
+     * @throws RuntimeException The exception of the last attempt, when the operation does not succeed within the
+     *                          maximum number of attempts, or fails for any other reason than a conflict.
+     */
+    public <T> T execute(IntFunction<T> operation)
+    {
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            if (attempt > 1)
+                retries.increment();
+
+            try {
+                return operation.apply(attempt);
+            } catch (RuntimeException e) {
+                if (!isConflict(e))
+                    throw e;
+
+                conflicts.increment();
+                if (attempt >= maxAttempts) {
+                    exhausted.increment();
+                    throw e;
+                }
+
+                backoff(attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Waits before the attempt following the provided attempt.
+     *
+     * @param attempt  The number of the attempt that failed.
+     * @param conflict The conflict that caused the attempt to fail, thrown when the thread is interrupted.
+     */
+    private void backoff(int attempt, RuntimeException conflict)
+    {
+        int  shift = attempt - 1;
+        long bound = shift < 63 && baseBackoff <= maxBackoff >> shift ? baseBackoff << shift : maxBackoff;
+        if (bound <= 0)
+            return;
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    /**
+     * Checks if the provided exception, or one of its causes, reports an optimistic locking conflict.
+     *
+     * @param e The exception to check.
+     * @return {@code true} if the provided exception reports an optimistic locking conflict.
+     */
+    public static boolean isConflict(Throwable e)
+    {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * Returns the maximum number of times an operation is attempted.
+     *
+     * @return The maximum number of times an operation is attempted.
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Returns the number of attempts made, including retries.
+     *
+     * @return The number of attempts made.
+     */
+    public long getAttemptCount()
+    {
+        return attempts.sum();
+    }
+
+    /**
+     * Returns the number of attempts that failed because of an optimistic locking conflict.
+     *
+     * @return The number of attempts that failed because of an optimistic locking conflict.
+     */
+    public long getConflictCount()
+    {
+        return conflicts.sum();
+    }
+
+    /**
+     * Returns the number of attempts made after a conflict.
+     *
+     * @return The number of attempts made after a conflict.
+     */
+    public long getRetryCount()
+    {
+        return retries.sum();
+    }
+
+    /**
+     * Returns the number of operations that still conflicted after the maximum number of attempts.
+     *
+     * @return The number of operations that still conflicted after the maximum number of attempts.
+     */
+    public long getExhaustedCount()
+    {
+        return exhausted.sum();
+    }
+
+    /**
+     * Returns the fraction of attempts that failed because of an optimistic locking conflict.
+     *
+     * @return The fraction of attempts that failed because of an optimistic locking conflict, {@code 0} when no
+     * attempts have been made.
+     */
+    public double getConflictRate()
+    {
+        long attempts = getAttemptCount();
+
+        return attempts == 0 ? 0 : (double) getConflictCount() / attempts;
+    }
+
+    @Override public String toString()
+    {
+        return "RetryPolicy{" +
+               "maxAttempts=" + maxAttempts +
+               ", attempts=" + getAttemptCount() +
+               ", conflicts=" + getConflictCount() +
+               ", retries=" + getRetryCount() +
+               ", exhausted=" + getExhaustedCount() +
+               '}';
+    }
+}
@@ -0,0 +1,197 @@
+package com.tvestergaard.ca;
+
+/**
+ * Immutable result of aggregating a {@link SalesSnapshot} by customer or item type. The groups are stored in two
+ * primitive arrays, where {@code values[x]} is the aggregated value of the customer or item type with the id
+ * {@code keys[x]}.
+ */
+public class SalesGroups
+{
+
+    /**
+     * The ids of the customers or item types.
+     */
+    private final long[] keys;
+
+    /**
+     * The aggregated values, where {@code values[x]} is the value of {@code keys[x]}.
+     */
+    private final long[] values;
+
+    /**
+     * Creates a new {@link SalesGroups}.
+     *
+     * @param keys   The ids of the customers or item types.
+     * @param values The aggregated values, where {@code values[x]} is the value of {@code keys[x]}.
+     */
+    SalesGroups(long[] keys, long[] values)
+    {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Returns the number of groups.
+     *
+     * @return The number of groups.
+     */
+    public int size()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Returns the id of the customer or item type of the group at the provided index.
+     *
+     * @param index The index of the group.
+     * @return The id of the customer or item type of the group.
+     */
+    public long getKey(int index)
+    {
+        return keys[index];
+    }
+
+    /**
+     * Returns the aggregated value of the group at the provided index.
+     *
+     * @param index The index of the group.
+     * @return The aggregated value of the group.
+     */
+    public long getValue(int index)
+    {
+        return values[index];
+    }
+
+    /**
+     * Returns the aggregated value of the customer or item type with the provided id.
+     *
+     * @param key The id of the customer or item type.
+     * @return The aggregated value of the customer or item type, {@code 0} when the customer or item type has no
+     * lines.
+     */
+    public long get(long key)
+    {
+        for (int x = 0; x < keys.length; x++)
+            if (keys[x] == key)
+                return values[x];
+
+        return 0;
+    }
+
+    /**
+     * Returns the sum of the aggregated values of every group.
+     *
+     * @return The sum of the aggregated values of every group.
+     */
+    public long sum()
+    {
+        long sum = 0;
+        for (int x = 0; x < values.length; x++)
+            sum += values[x];
+
+        return sum;
+    }
+
+    /**
+     * Returns the groups with the largest values, sorted by their value in descending order. Groups with the same
+     * value are sorted by their id. The groups are selected using a heap of the provided size, so the groups are
+     * not sorted in their entirety.
+     *
+     * @param limit The maximum number of groups to return.
+     * @return The groups with the largest values.
+     */
+    public SalesGroups top(int limit)
+    {
+        if (limit < 0)
+            throw new IllegalArgumentException("The limit must not be negative.");
+
+        int   size = Math.min(limit, keys.length);
+        int[] heap = new int[size];
+        int   used = 0;
+        for (int x = 0; x < keys.length; x++) {
+            if (used < size) {
+                heap[used] = x;
+                siftUp(heap, used++);
+            } else if (size > 0 && precedes(x, heap[0])) {
+                heap[0] = x;
+                siftDown(heap, 0, size);
+            }
+        }
+
+        long[] topKeys   = new long[size];
+        long[] topValues = new long[size];
+        for (int x = size - 1; x >= 0; x--) {
+            int group = heap[0];
+            heap[0] = heap[x];
+            siftDown(heap, 0, x);
+            topKeys[x] = keys[group];
+            topValues[x] = values[group];
+        }
+
+        return new SalesGroups(topKeys, topValues);
+    }
+
+    /**
+     * Checks if the group at the first index is ranked before the group at the second index.
+     *
+     * @param a The index of the first group.
+     * @param b The index of the second group.
+     * @return {@code true} if the first group has the larger value, or the same value and the smaller id.
+     */
+    private boolean precedes(int a, int b)
+    {
+        return values[a] > values[b] || values[a] == values[b] && keys[a] < keys[b];
+    }
+
+    /**
+     * Moves the group at the provided position of the heap towards the root, until the heap has the group ranked
+     * last at its root.
+     *
+     * @param heap     The indexes of the groups in the heap.
+     * @param position The position of the group to move.
+     */
+    private void siftUp(int[] heap, int position)
+    {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!precedes(heap[parent], heap[position]))
+                return;
+
+            swap(heap, parent, position);
+            position = parent;
+        }
+    }
+
+    /**
+     * Moves the group at the provided position of the heap away from the root, until the heap has the group ranked
+     * last at its root.
+     *
+     * @param heap     The indexes of the groups in the heap.
+     * @param position The position of the group to move.
+     * @param size     The number of groups in the heap.
+     */
+    private void siftDown(int[] heap, int position, int size)
+    {
+        while (true) {
+            int last  = position;
+            int left  = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && precedes(heap[last], heap[left]))
+                last = left;
+            if (right < size && precedes(heap[last], heap[right]))
+                last = right;
+            if (last == position)
+                return;
+
+            swap(heap, position, last);
+            position = last;
+        }
+    }
+
+    private static void swap(int[] heap, int a, int b)
+    {
+        int temporary = heap[a];
+        heap[a] = heap[b];
+        heap[b] = temporary;
+    }
+}
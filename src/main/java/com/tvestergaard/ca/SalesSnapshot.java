@@ -0,0 +1,659 @@
+package com.tvestergaard.ca;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Columnar, in-memory copy of the order lines, used to answer revenue and quantity questions without creating
+ * entities. Each attribute of the lines is stored in its own primitive array, and the ids of the customers and item
+ * types are replaced by dense codes, so that aggregating by customer or item type indexes an array instead of
+ * hashing. Aggregations over large snapshots are split into partitions, that are aggregated in parallel and merged.
+ * <p>
+ * Snapshots are immutable and can be shared between threads. {@link #refresh()} returns a new snapshot that also
+ * contains the lines of the orders created since, and appends the new lines to the columns of this snapshot instead
+ * of copying them, when no other snapshot has been refreshed from this snapshot already.
+ * <p>
+ * The unit price of a line is the price of its item type when the line is loaded.
+ */
+public class SalesSnapshot
+{
+
+    /**
+     * The attribute the lines are grouped by.
+     */
+    public enum Dimension
+    {
+        CUSTOMER, ITEM
+    }
+
+    /**
+     * The value aggregated from the lines in each group.
+     */
+    public enum Measure
+    {
+
+        /**
+         * The number of lines.
+         */
+        LINES,
+
+        /**
+         * The sum of the quantities of the lines.
+         */
+        QUANTITY,
+
+        /**
+         * The sum of the quantity multiplied by the unit price of each line.
+         */
+        REVENUE
+    }
+
+    /**
+     * The number of rows retrieved from the database in each round trip, when no fetch size is provided.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * The smallest number of lines aggregated by each partition, so that small snapshots are not split into
+     * partitions that cost more to schedule than to aggregate.
+     */
+    private static final int MIN_PARTITION_SIZE = 1 << 16;
+
+    /**
+     * The columns the lines of this snapshot are stored in. The columns may contain lines after the lines of this
+     * snapshot, appended by {@link #refresh()}.
+     */
+    private final Columns columns;
+
+    /**
+     * The number of lines in the snapshot.
+     */
+    private final int size;
+
+    /**
+     * The id of the order of each line.
+     */
+    private final long[] orders;
+
+    /**
+     * The code of the customer of each line, the index of the id of the customer in {@link #customerIds}.
+     */
+    private final int[] customers;
+
+    /**
+     * The code of the item type of each line, the index of the id of the item type in {@link #itemIds}.
+     */
+    private final int[] items;
+
+    /**
+     * The quantity of each line.
+     */
+    private final long[] quantities;
+
+    /**
+     * The unit price of each line.
+     */
+    private final long[] prices;
+
+    /**
+     * The ids of the customers, indexed by their code.
+     */
+    private final long[] customerIds;
+
+    /**
+     * The number of customers in the snapshot.
+     */
+    private final int customerCount;
+
+    /**
+     * The ids of the item types, indexed by their code.
+     */
+    private final long[] itemIds;
+
+    /**
+     * The number of item types in the snapshot.
+     */
+    private final int itemCount;
+
+    /**
+     * The largest order id in the snapshot, {@code 0} when the snapshot is empty.
+     */
+    private final long lastOrder;
+
+    /**
+     * Creates a new {@link SalesSnapshot} of the lines currently in the provided columns.
+     *
+     * @param columns The columns containing the lines of the snapshot.
+     */
+    private SalesSnapshot(Columns columns)
+    {
+        this.columns = columns;
+        this.size = columns.size;
+        this.orders = columns.orders;
+        this.customers = columns.customers;
+        this.items = columns.items;
+        this.quantities = columns.quantities;
+        this.prices = columns.prices;
+        this.customerIds = columns.customerDictionary.ids;
+        this.customerCount = columns.customerDictionary.count;
+        this.itemIds = columns.itemDictionary.ids;
+        this.itemCount = columns.itemDictionary.count;
+        this.lastOrder = columns.lastOrder;
+    }
+
+    /**
+     * Loads a snapshot of every order line, using the {@link #DEFAULT_FETCH_SIZE}.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} the lines are read from.
+     * @return The new snapshot.
+     */
+    public static SalesSnapshot load(EntityManagerFactory entityManagerFactory)
+    {
+        return load(entityManagerFactory, DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Loads a snapshot of every order line. The lines are streamed from a database cursor, without creating entities.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} the lines are read from.
+     * @param fetchSize            The number of rows to retrieve from the database in each round trip, also used when
+     *                             the snapshot is refreshed.
+     * @return The new snapshot.
+     */
+    public static SalesSnapshot load(EntityManagerFactory entityManagerFactory, int fetchSize)
+    {
+        if (fetchSize < 1)
+            throw new IllegalArgumentException("The fetch size must be positive.");
+
+        return new SalesSnapshot(new Columns(entityManagerFactory, fetchSize, 1024)).refresh();
+    }
+
+    /**
+     * Returns a snapshot containing the lines of this snapshot, and the lines of the orders with an id greater than
+     * {@link #getLastOrder()}. Lines added to orders already in this snapshot, and orders with a smaller id that are
+     * committed after this snapshot was loaded, are only included by loading a new snapshot.
+     *
+     * @return The refreshed snapshot, containing the lines of this snapshot followed by the new lines.
+     */
+    public SalesSnapshot refresh()
+    {
+        synchronized (columns) {
+            Columns target = columns.size == size ? columns : columns.copy(this);
+            try (TransactionalRepository repository = new TransactionalRepository(columns.entityManagerFactory,
+                                                                                  TransactionStrategy.READ_ONLY);
+                 Stream<Object[]> rows = repository.streamSales(lastOrder, columns.fetchSize)) {
+                rows.forEach(target::append);
+            }
+
+            return new SalesSnapshot(target);
+        }
+    }
+
+    /**
+     * Returns the number of lines in the snapshot.
+     *
+     * @return The number of lines in the snapshot.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the largest order id in the snapshot, after which {@link #refresh()} loads new lines.
+     *
+     * @return The largest order id in the snapshot, {@code 0} when the snapshot is empty.
+     */
+    public long getLastOrder()
+    {
+        return lastOrder;
+    }
+
+    /**
+     * Returns the number of distinct customers with lines in the snapshot.
+     *
+     * @return The number of distinct customers with lines in the snapshot.
+     */
+    public int getCustomerCount()
+    {
+        return customerCount;
+    }
+
+    /**
+     * Returns the number of distinct item types with lines in the snapshot.
+     *
+     * @return The number of distinct item types with lines in the snapshot.
+     */
+    public int getItemCount()
+    {
+        return itemCount;
+    }
+
+    /**
+     * Aggregates the provided measure of the lines over the entire snapshot.
+     *
+     * @param measure The measure to aggregate.
+     * @return The aggregated measure.
+     */
+    public long total(Measure measure)
+    {
+        if (measure == Measure.LINES)
+            return size;
+
+        return aggregate(1, partitions(), (result, from, to) -> result[0] = sum(measure, from, to))[0];
+    }
+
+    /**
+     * Groups the lines by the provided dimension, and aggregates the provided measure of the lines in each group.
+     *
+     * @param dimension The attribute to group the lines by.
+     * @param measure   The measure to aggregate.
+     * @return The groups, containing every customer or item type with lines in the snapshot.
+     */
+    public SalesGroups group(Dimension dimension, Measure measure)
+    {
+        return group(dimension, measure, partitions());
+    }
+
+    /**
+     * Groups the lines by the provided dimension, and aggregates the provided measure of the lines in each group,
+     * using the provided number of partitions.
+     *
+     * @param dimension  The attribute to group the lines by.
+     * @param measure    The measure to aggregate.
+     * @param partitions The number of partitions aggregated in parallel.
+     * @return The groups, containing every customer or item type with lines in the snapshot.
+     */
+    SalesGroups group(Dimension dimension, Measure measure, int partitions)
+    {
+        int[]  keys   = dimension == Dimension.CUSTOMER ? customers : items;
+        long[] ids    = dimension == Dimension.CUSTOMER ? customerIds : itemIds;
+        int    groups = dimension == Dimension.CUSTOMER ? customerCount : itemCount;
+
+        long[] values = aggregate(groups, partitions, (result, from, to) -> group(keys, measure, result, from, to));
+
+        return new SalesGroups(Arrays.copyOf(ids, groups), values);
+    }
+
+    /**
+     * Returns the customers or item types with the largest aggregated measure.
+     *
+     * @param dimension The attribute to group the lines by.
+     * @param measure   The measure to aggregate.
+     * @param limit     The maximum number of groups to return.
+     * @return The groups with the largest aggregated measure, sorted by the measure in descending order.
+     */
+    public SalesGroups top(Dimension dimension, Measure measure, int limit)
+    {
+        return group(dimension, measure).top(limit);
+    }
+
+    /**
+     * Counts the lines by their quantity.
+     *
+     * @param max The largest quantity counted separately. Lines with a larger quantity are counted together with
+     *            the lines with this quantity.
+     * @return The number of lines with each quantity, where element {@code x} is the number of lines with the
+     * quantity {@code x}, and the last element is the number of lines with a quantity of at least {@code max}.
+     */
+    public long[] quantityHistogram(int max)
+    {
+        if (max < 0)
+            throw new IllegalArgumentException("The maximum quantity must not be negative.");
+
+        return aggregate(max + 1, partitions(), (counts, from, to) -> {
+            for (int x = from; x < to; x++)
+                counts[(int) Math.max(0, Math.min(quantities[x], max))]++;
+        });
+    }
+
+    /**
+     * Returns the number of partitions to aggregate the snapshot in.
+     *
+     * @return The number of partitions to aggregate the snapshot in.
+     */
+    private int partitions()
+    {
+        return Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), size / MIN_PARTITION_SIZE));
+    }
+
+    /**
+     * Aggregates the lines in the provided number of partitions, each aggregating into its own array, and adds the
+     * arrays of the partitions together.
+     *
+     * @param length      The length of the array aggregated into.
+     * @param partitions  The number of partitions.
+     * @param aggregation The aggregation of the lines in a single partition.
+     * @return The aggregated array.
+     */
+    private long[] aggregate(int length, int partitions, Aggregation aggregation)
+    {
+        if (partitions <= 1) {
+            long[] result = new long[length];
+            aggregation.aggregate(result, 0, size);
+            return result;
+        }
+
+        return IntStream.range(0, partitions)
+                        .parallel()
+                        .mapToObj(partition -> {
+                            long[] result = new long[length];
+                            aggregation.aggregate(result, bound(partition, partitions), bound(partition + 1, partitions));
+                            return result;
+                        })
+                        .reduce(SalesSnapshot::merge)
+                        .orElseGet(() -> new long[length]);
+    }
+
+    /**
+     * Returns the index of the first line of the provided partition.
+     *
+     * @param partition  The partition.
+     * @param partitions The number of partitions.
+     * @return The index of the first line of the partition, {@link #size} for the partition after the last.
+     */
+    private int bound(int partition, int partitions)
+    {
+        return (int) ((long) size * partition / partitions);
+    }
+
+    /**
+     * Adds the values of the second array to the first array.
+     *
+     * @param a The array to add to.
+     * @param b The array to add.
+     * @return The first array.
+     */
+    private static long[] merge(long[] a, long[] b)
+    {
+        for (int x = 0; x < a.length; x++)
+            a[x] += b[x];
+
+        return a;
+    }
+
+    /**
+     * Aggregates the provided measure of the lines in the provided range.
+     *
+     * @param measure The measure to aggregate.
+     * @param from    The index of the first line, inclusive.
+     * @param to      The index of the last line, exclusive.
+     * @return The aggregated measure.
+     */
+    private long sum(Measure measure, int from, int to)
+    {
+        long sum = 0;
+        switch (measure) {
+            case LINES:
+                return to - from;
+            case QUANTITY:
+                for (int x = from; x < to; x++)
+                    sum += quantities[x];
+                return sum;
+            case REVENUE:
+                for (int x = from; x < to; x++)
+                    sum += quantities[x] * prices[x];
+                return sum;
+            default:
+                throw new IllegalArgumentException("Unknown measure " + measure);
+        }
+    }
+
+    /**
+     * Aggregates the provided measure of the lines in the provided range into the groups of the lines. The measure
+     * is chosen once for the range, so that each loop only reads the columns it aggregates.
+     *
+     * @param keys    The code of the group of each line.
+     * @param measure The measure to aggregate.
+     * @param groups  The aggregated values, indexed by the code of the group.
+     * @param from    The index of the first line, inclusive.
+     * @param to      The index of the last line, exclusive.
+     */
+    private void group(int[] keys, Measure measure, long[] groups, int from, int to)
+    {
+        switch (measure) {
+            case LINES:
+                for (int x = from; x < to; x++)
+                    groups[keys[x]]++;
+                break;
+            case QUANTITY:
+                for (int x = from; x < to; x++)
+                    groups[keys[x]] += quantities[x];
+                break;
+            case REVENUE:
+                for (int x = from; x < to; x++)
+                    groups[keys[x]] += quantities[x] * prices[x];
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown measure " + measure);
+        }
+    }
+
+    @Override public String toString()
+    {
+        return "SalesSnapshot{" +
+               "size=" + size +
+               ", customers=" + customerCount +
+               ", items=" + itemCount +
+               ", lastOrder=" + lastOrder +
+               '}';
+    }
+
+    /**
+     * The aggregation of the lines in a single partition.
+     */
+    @FunctionalInterface
+    private interface Aggregation
+    {
+
+        /**
+         * Aggregates the lines in the provided range into the provided array.
+         *
+         * @param result The array to aggregate into.
+         * @param from   The index of the first line, inclusive.
+         * @param to     The index of the last line, exclusive.
+         */
+        void aggregate(long[] result, int from, int to);
+    }
+
+    /**
+     * The growable arrays the lines of one or more snapshots are stored in. Lines are only appended, so a snapshot
+     * keeps reading the lines it was created with while lines are appended for a refreshed snapshot. Arrays that are
+     * full are replaced by larger copies, while the snapshots created before keep the previous arrays.
+     */
+    private static final class Columns
+    {
+
+        private final EntityManagerFactory entityManagerFactory;
+        private final int                  fetchSize;
+        private final Dictionary           customerDictionary;
+        private final Dictionary           itemDictionary;
+
+        private long[] orders;
+        private int[]  customers;
+        private int[]  items;
+        private long[] quantities;
+        private long[] prices;
+        private int    size;
+        private long   lastOrder;
+
+        Columns(EntityManagerFactory entityManagerFactory, int fetchSize, int capacity)
+        {
+            this(entityManagerFactory, fetchSize, capacity, new Dictionary(), new Dictionary());
+        }
+
+        private Columns(EntityManagerFactory entityManagerFactory, int fetchSize, int capacity,
+                        Dictionary customerDictionary, Dictionary itemDictionary)
+        {
+            this.entityManagerFactory = entityManagerFactory;
+            this.fetchSize = fetchSize;
+            this.customerDictionary = customerDictionary;
+            this.itemDictionary = itemDictionary;
+            this.orders = new long[capacity];
+            this.customers = new int[capacity];
+            this.items = new int[capacity];
+            this.quantities = new long[capacity];
+            this.prices = new long[capacity];
+        }
+
+        /**
+         * Copies the lines of the provided snapshot into new columns, so that lines can be appended without
+         * overwriting the lines appended after the snapshot.
+         *
+         * @param snapshot The snapshot to copy the lines of.
+         * @return The new columns.
+         */
+        Columns copy(SalesSnapshot snapshot)
+        {
+            Columns copy = new Columns(entityManagerFactory, fetchSize, Math.max(1024, snapshot.size),
+                                       customerDictionary.copy(snapshot.customerCount),
+                                       itemDictionary.copy(snapshot.itemCount));
+            System.arraycopy(snapshot.orders, 0, copy.orders, 0, snapshot.size);
+            System.arraycopy(snapshot.customers, 0, copy.customers, 0, snapshot.size);
+            System.arraycopy(snapshot.items, 0, copy.items, 0, snapshot.size);
+            System.arraycopy(snapshot.quantities, 0, copy.quantities, 0, snapshot.size);
+            System.arraycopy(snapshot.prices, 0, copy.prices, 0, snapshot.size);
+            copy.size = snapshot.size;
+            copy.lastOrder = snapshot.lastOrder;
+
+            return copy;
+        }
+
+        /**
+         * Appends a row returned by {@link TransactionalRepository#streamSales(long, int)}.
+         *
+         * @param row The row to append.
+         */
+        void append(Object[] row)
+        {
+            if (size == orders.length) {
+                int capacity = size * 2;
+                orders = Arrays.copyOf(orders, capacity);
+                customers = Arrays.copyOf(customers, capacity);
+                items = Arrays.copyOf(items, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+            }
+
+            long order = ((Number) row[0]).longValue();
+            orders[size] = order;
+            customers[size] = customerDictionary.encode(((Number) row[1]).longValue());
+            items[size] = itemDictionary.encode(((Number) row[2]).longValue());
+            quantities[size] = ((Number) row[3]).longValue();
+            prices[size] = ((Number) row[4]).longValue();
+            lastOrder = Math.max(lastOrder, order);
+            size++;
+        }
+    }
+
+    /**
+     * Assigns dense codes to ids, in the order the ids are first encoded. The ids are found using open addressing
+     * over primitive arrays, so encoding an id neither boxes nor allocates.
+     */
+    private static final class Dictionary
+    {
+
+        /**
+         * The ids, indexed by their code. Replaced by a larger copy when full.
+         */
+        private long[] ids = new long[16];
+
+        /**
+         * The number of ids encoded.
+         */
+        private int count;
+
+        /**
+         * The ids in the hash table.
+         */
+        private long[] keys = new long[32];
+
+        /**
+         * The code of the id in each slot of the hash table, plus one, so that empty slots contain {@code 0}.
+         */
+        private int[] codes = new int[32];
+
+        /**
+         * Returns the code of the provided id, assigning the next code when the id has not been encoded before.
+         *
+         * @param id The id to encode.
+         * @return The code of the id.
+         */
+        int encode(long id)
+        {
+            int mask = keys.length - 1;
+            for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+                if (codes[slot] == 0)
+                    return add(id, slot);
+                if (keys[slot] == id)
+                    return codes[slot] - 1;
+            }
+        }
+
+        /**
+         * Assigns the next code to the provided id.
+         *
+         * @param id   The id to assign the next code to.
+         * @param slot The empty slot of the hash table to insert the id into.
+         * @return The code of the id.
+         */
+        private int add(long id, int slot)
+        {
+            if (count == ids.length)
+                ids = Arrays.copyOf(ids, count * 2);
+
+            int code = count++;
+            ids[code] = id;
+            keys[slot] = id;
+            codes[slot] = code + 1;
+            if (count * 2 > keys.length)
+                rehash(keys.length * 2);
+
+            return code;
+        }
+
+        /**
+         * Replaces the hash table with a hash table of the provided capacity.
+         *
+         * @param capacity The capacity of the new hash table, a power of two.
+         */
+        private void rehash(int capacity)
+        {
+            keys = new long[capacity];
+            codes = new int[capacity];
+            int mask = capacity - 1;
+            for (int code = 0; code < count; code++) {
+                int slot = hash(ids[code]) & mask;
+                while (codes[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = ids[code];
+                codes[slot] = code + 1;
+            }
+        }
+
+        /**
+         * Returns a dictionary containing the provided number of the first codes of this dictionary.
+         *
+         * @param count The number of codes to copy.
+         * @return The new dictionary.
+         */
+        Dictionary copy(int count)
+        {
+            Dictionary copy = new Dictionary();
+            for (int code = 0; code < count; code++)
+                copy.encode(ids[code]);
+
+            return copy;
+        }
+
+        private static int hash(long id)
+        {
+            long hash = id * 0x9E3779B97F4A7C15L;
+
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.tvestergaard.ca;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Records the SQL statements executed and the time spent flushing by a session, into the {@link MetricsRecording}
+ * of the current thread. The listener is enabled by setting the {@code hibernate.session.events.auto} property of
+ * the persistence unit to the name of this class.
+ */
+public class SessionMetricsListener extends BaseSessionEventListener
+{
+
+    /**
+     * The time the current flush started, in nanoseconds.
+     */
+    private long flushStart;
+
+    @Override public void jdbcExecuteStatementStart()
+    {
+        MetricsRecording recording = MetricsRecording.current();
+        if (recording != null)
+            recording.statements++;
+    }
+
+    @Override public void jdbcExecuteBatchStart()
+    {
+        MetricsRecording recording = MetricsRecording.current();
+        if (recording != null)
+            recording.statements++;
+    }
+
+    @Override public void flushStart()
+    {
+        flushStart = System.nanoTime();
+    }
+
+    @Override public void flushEnd(int numberOfEntities, int numberOfCollections)
+    {
+        recordFlush();
+    }
+
+    @Override public void partialFlushStart()
+    {
+        flushStart = System.nanoTime();
+    }
+
+    @Override public void partialFlushEnd(int numberOfEntities, int numberOfCollections)
+    {
+        recordFlush();
+    }
+
+    /**
+     * Records the time spent since the current flush started.
+     */
+    private void recordFlush()
+    {
+        MetricsRecording recording = MetricsRecording.current();
+        if (recording != null)
+            recording.flushNanos += System.nanoTime() - flushStart;
+    }
+}
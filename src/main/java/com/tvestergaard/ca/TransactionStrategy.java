@@ -2,6 +2,22 @@ package com.tvestergaard.ca;
 
 public enum TransactionStrategy
 {
+
+    /**
+     * Commits the transaction when the {@link TransactionalRepository} is closed.
+     */
     COMMIT,
-    ROLLBACK
+
+    /**
+     * Rolls back the transaction when the {@link TransactionalRepository} is closed.
+     */
+    ROLLBACK,
+
+    /**
+     * Performs the transaction in read-only mode, and rolls back the transaction when the
+     * {@link TransactionalRepository} is closed. Entities are loaded read-only without snapshots, changes are never
+     * flushed, and the JDBC connection is marked read-only, so that it can be routed to a replica. This strategy can
+     * only be selected when the {@link TransactionalRepository} is created.
+     */
+    READ_ONLY
 }
@@ -5,8 +5,20 @@ import com.tvestergaard.ca.entities.ItemType;
 import com.tvestergaard.ca.entities.Order;
 import com.tvestergaard.ca.entities.OrderLine;
 
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+
 import javax.persistence.*;
-import java.util.List;
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Repository implementation that provides support for transactions across operations.
@@ -14,6 +26,18 @@ import java.util.List;
 public class TransactionalRepository implements Repository, AutoCloseable
 {
 
+    /**
+     * The name of the persistence unit property containing the maximum number of ids included in each query issued by
+     * {@link #findCustomers(long[])} and {@link #getItems(long[])}.
+     */
+    public static final String MULTI_GET_BATCH_SIZE = "com.tvestergaard.ca.multi_get.batch_size";
+
+    /**
+     * The maximum number of ids included in each multi-get query, when no
+     * {@link TransactionalRepository#MULTI_GET_BATCH_SIZE} is configured.
+     */
+    public static final int DEFAULT_MULTI_GET_BATCH_SIZE = 100;
+
     /**
      * The {@code EntityManager} that the object performs operations on.
      */
@@ -33,6 +57,11 @@ public class TransactionalRepository implements Repository, AutoCloseable
      */
     private TransactionStrategy onClose;
 
+    /**
+     * The maximum number of ids included in each multi-get query.
+     */
+    private final int multiGetBatchSize;
+
     /**
      * Creates a new {@link TransactionalRepository}. Begins the transaction.
      *
@@ -46,8 +75,15 @@ public class TransactionalRepository implements Repository, AutoCloseable
     {
         this.entityManager = entityManagerFactory.createEntityManager();
         this.transaction = entityManager.getTransaction();
-        this.transaction.begin();
         this.onClose = onClose;
+        this.multiGetBatchSize = multiGetBatchSize(entityManagerFactory);
+        if (isReadOnly()) {
+            Session session = entityManager.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+        }
+
+        begin();
     }
 
     /**
@@ -61,17 +97,43 @@ public class TransactionalRepository implements Repository, AutoCloseable
         this(entityManagerFactory, TransactionStrategy.COMMIT);
     }
 
+    /**
+     * Returns the maximum number of ids included in each multi-get query, as configured by the
+     * {@link TransactionalRepository#MULTI_GET_BATCH_SIZE} property of the persistence unit.
+     *
+     * @param entityManagerFactory The {@code EntityManagerFactory} to read the property from.
+     * @return The maximum number of ids included in each multi-get query.
+     */
+    private static int multiGetBatchSize(EntityManagerFactory entityManagerFactory)
+    {
+        Object value = entityManagerFactory.getProperties().get(MULTI_GET_BATCH_SIZE);
+        if (value == null)
+            return DEFAULT_MULTI_GET_BATCH_SIZE;
+
+        int batchSize = Integer.parseInt(value.toString().trim());
+        if (batchSize < 1)
+            throw new IllegalArgumentException(MULTI_GET_BATCH_SIZE + " must be positive.");
+
+        return batchSize;
+    }
+
     /**
      * Sets the operation to perform when the {@link TransactionalRepository} is closed. If the
      * {@link TransactionalRepository} has been committed or rolled back manually, no action is taken.
      *
      * @param strategy The action to perform when this object is closed, and the transaction is still active.
      * @return this
+     * @throws UnsupportedOperationException When changing to or from {@link TransactionStrategy#READ_ONLY}, which
+     *                                       can only be selected when the {@link TransactionalRepository} is created.
      * @see TransactionalRepository#onClose(TransactionStrategy)
      * @see TransactionalRepository#close()
      */
     public TransactionalRepository onClose(TransactionStrategy strategy)
     {
+        if (strategy != onClose && (isReadOnly() || strategy == TransactionStrategy.READ_ONLY))
+            throw new UnsupportedOperationException("The READ_ONLY TransactionStrategy can only be selected when " +
+                                                    "the TransactionalRepository is created.");
+
         this.onClose = strategy;
 
         return this;
@@ -88,6 +150,19 @@ public class TransactionalRepository implements Repository, AutoCloseable
         return transaction.isActive();
     }
 
+    /**
+     * Checks if the currently active transaction has been marked for rollback, for example because an operation
+     * failed with a {@code PersistenceException}. Such a transaction can only be rolled back, also after rolling back
+     * to a savepoint.
+     *
+     * @return {@code true} if the currently active transaction can only be rolled back.
+     * @see EntityTransaction#getRollbackOnly()
+     */
+    public boolean isRollbackOnly()
+    {
+        return transaction.isActive() && transaction.getRollbackOnly();
+    }
+
     /**
      * Begins the currently active transaction.
      *
@@ -96,6 +171,8 @@ public class TransactionalRepository implements Repository, AutoCloseable
     public TransactionalRepository begin()
     {
         transaction.begin();
+        if (isReadOnly())
+            setConnectionReadOnly(true);
 
         return this;
     }
@@ -107,6 +184,8 @@ public class TransactionalRepository implements Repository, AutoCloseable
      */
     public TransactionalRepository commit()
     {
+        if (isReadOnly())
+            setConnectionReadOnly(false);
         transaction.commit();
 
         return this;
@@ -117,11 +196,79 @@ public class TransactionalRepository implements Repository, AutoCloseable
      */
     public TransactionalRepository rollback()
     {
+        if (isReadOnly())
+            setConnectionReadOnly(false);
         transaction.rollback();
 
         return this;
     }
 
+    /**
+     * Marks a savepoint in the currently active transaction, that the transaction can later be rolled back to using
+     * {@link #rollbackToSavepoint(Savepoint)}. Pending changes are flushed first, so that the savepoint includes every
+     * change made before it.
+     *
+     * @return The savepoint.
+     */
+    public Savepoint setSavepoint()
+    {
+        entityManager.flush();
+
+        return entityManager.unwrap(Session.class).doReturningWork(Connection::setSavepoint);
+    }
+
+    /**
+     * Releases the provided savepoint. The changes made after the savepoint remain part of the transaction.
+     *
+     * @param savepoint The savepoint to release.
+     * @return this
+     */
+    public TransactionalRepository releaseSavepoint(Savepoint savepoint)
+    {
+        entityManager.unwrap(Session.class).doWork(connection -> connection.releaseSavepoint(savepoint));
+
+        return this;
+    }
+
+    /**
+     * Rolls back the changes made to the currently active transaction after the provided savepoint. Since the changes
+     * cannot be removed from the persistence context one by one, the persistence context is cleared, and every entity
+     * previously returned by the repository becomes detached. Rolling back to a savepoint does not clear the
+     * rollback-only flag of the transaction, see {@link #isRollbackOnly()}.
+     *
+     * @param savepoint The savepoint to roll back to.
+     * @return this
+     */
+    public TransactionalRepository rollbackToSavepoint(Savepoint savepoint)
+    {
+        entityManager.clear();
+        entityManager.unwrap(Session.class).doWork(connection -> connection.rollback(savepoint));
+
+        return this;
+    }
+
+    /**
+     * Checks if the repository performs its transactions in read-only mode.
+     *
+     * @return {@code true} if the repository performs its transactions in read-only mode.
+     * @see TransactionStrategy#READ_ONLY
+     */
+    public boolean isReadOnly()
+    {
+        return onClose == TransactionStrategy.READ_ONLY;
+    }
+
+    /**
+     * Marks the JDBC connection used by the current transaction as read-only, or read-write. The connection must be
+     * made read-write again before it is released, since it may be reused by other transactions.
+     *
+     * @param readOnly Whether or not the connection should be read-only.
+     */
+    private void setConnectionReadOnly(boolean readOnly)
+    {
+        entityManager.unwrap(Session.class).doWork(connection -> connection.setReadOnly(readOnly));
+    }
+
     /**
      * Closes the {@code EntityManager} used in the repository.
      */
@@ -130,8 +277,8 @@ public class TransactionalRepository implements Repository, AutoCloseable
         if (transaction.isActive())
             if (onClose == TransactionStrategy.COMMIT)
                 transaction.commit();
-            else if (onClose == TransactionStrategy.ROLLBACK)
-                transaction.rollback();
+            else if (onClose == TransactionStrategy.ROLLBACK || onClose == TransactionStrategy.READ_ONLY)
+                rollback();
             else
                 throw new UnsupportedOperationException("Unsupported TransactionStrategy " + onClose.name());
 
@@ -163,6 +310,32 @@ public class TransactionalRepository implements Repository, AutoCloseable
         return entityManager.find(Customer.class, id);
     }
 
+    /**
+     * Finds the customers with the provided ids. The customers are loaded using {@code IN} queries of at most
+     * {@link TransactionalRepository#MULTI_GET_BATCH_SIZE} ids, and customers that are already managed are not loaded
+     * again.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<Customer> findCustomers(long[] ids)
+    {
+        return multiGet(Customer.class, ids);
+    }
+
+    /**
+     * Finds the customers with the provided ids. The customers are loaded using {@code IN} queries of at most
+     * {@link TransactionalRepository#MULTI_GET_BATCH_SIZE} ids, and customers that are already managed are not loaded
+     * again.
+     *
+     * @param ids The ids of the customers to find.
+     * @return The customers with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<Customer> findCustomers(Collection<Long> ids)
+    {
+        return multiGet(Customer.class, unbox(ids));
+    }
+
     /**
      * Returns a complete list of customers.
      *
@@ -173,6 +346,34 @@ public class TransactionalRepository implements Repository, AutoCloseable
         return entityManager.createNamedQuery("Customer.findAll", Customer.class).getResultList();
     }
 
+    /**
+     * Returns the customers with an id greater than the provided id, sorted by their id. The last id of the returned
+     * page is used to retrieve the next page.
+     *
+     * @param after The id after which customers are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of customers to return.
+     * @return The page of customers.
+     */
+    @Override public List<Customer> getCustomers(long after, int limit)
+    {
+        return entityManager.createNamedQuery("Customer.findAfter", Customer.class)
+                            .setParameter("after", after)
+                            .setMaxResults(limit)
+                            .getResultList();
+    }
+
+    /**
+     * Returns a stream of all the customers. The customers are read from a database cursor, and are detached before
+     * they are returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of customers.
+     */
+    @Override public Stream<Customer> streamCustomers(int fetchSize)
+    {
+        return stream(entityManager.createNamedQuery("Customer.findAll", Customer.class), fetchSize);
+    }
+
     /**
      * Creates a new order from the provided arguments.
      *
@@ -181,11 +382,102 @@ public class TransactionalRepository implements Repository, AutoCloseable
      */
     @Override public Order createOrder(Customer customer)
     {
-        Order order = new Order(customer);
+        Order order = new Order(managed(Customer.class, customer, customer.getId()));
+        entityManager.persist(order);
+        return order;
+    }
+
+    /**
+     * Creates a new order containing the provided lines. The lines are persisted in the current transaction, and
+     * are written together with the order when the transaction is flushed. The total of the order is computed from
+     * the prices of the provided items, before detached items are replaced by references, so that no item is read.
+     *
+     * @param customer The customer who owns the order.
+     * @param lines    The lines to include in the order. Each line is created using
+     *                 {@link OrderLine#OrderLine(long, ItemType)}, and must not have been persisted already.
+     * @return The newly created order entity.
+     */
+    @Override public Order createOrder(Customer customer, List<OrderLine> lines)
+    {
+        Order order = new Order(managed(Customer.class, customer, customer.getId()));
+        order.setTotal(total(lines));
+        for (OrderLine line : lines) {
+            line.setItem(managed(ItemType.class, line.getItem(), line.getItem().getId()));
+            line.setOrder(order);
+            order.addLine(line);
+        }
+
         entityManager.persist(order);
+        for (OrderLine line : lines)
+            entityManager.persist(line);
+
         return order;
     }
 
+    /**
+     * Returns the sum of the quantity multiplied by the price of each of the provided lines. The total must be computed
+     * before the items of the lines are replaced using {@link #managed(Class, Object, long)}, since reading the price
+     * of a reference loads the item.
+     *
+     * @param lines The lines to return the total of.
+     * @return The sum of the quantity multiplied by the price of each of the provided lines.
+     */
+    private static long total(List<OrderLine> lines)
+    {
+        long total = 0;
+        for (OrderLine line : lines)
+            total += line.getQuantity() * line.getItem().getPrice();
+
+        return total;
+    }
+
+    /**
+     * Adds the provided amount to the total of the provided order. The total is changed on the managed order, and is
+     * written together with the incremented version of the order when the transaction is flushed, so that concurrent
+     * additions to the same order fail the version check instead of overwriting each other. When the amount is
+     * {@code 0} the order is not changed, so its version is incremented explicitly.
+     *
+     * @param order  The managed order to add the amount to.
+     * @param amount The amount to add.
+     */
+    private void addToTotal(Order order, long amount)
+    {
+        if (amount == 0)
+            forceVersionIncrement(order);
+        else
+            order.setTotal(order.getTotal() + amount);
+    }
+
+    /**
+     * Increments the version of the provided order when the transaction commits, so that concurrent transactions
+     * adding lines to the same order conflict, and copies of the order read before the lines were added are stale.
+     *
+     * @param order The managed order to increment the version of.
+     */
+    private void forceVersionIncrement(Order order)
+    {
+        if (entityManager.getLockMode(order) != LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+            entityManager.lock(order, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+    }
+
+    /**
+     * Returns a version of the provided entity that is managed by the {@code EntityManager}. Detached entities are
+     * replaced by a reference, so that no select is issued to reattach them.
+     *
+     * @param type   The type of the entity.
+     * @param entity The entity to return a managed version of.
+     * @param id     The id of the entity.
+     * @param <T>    The type of the entity.
+     * @return The managed version of the provided entity.
+     */
+    private <T> T managed(Class<T> type, T entity, long id)
+    {
+        if (entityManager.contains(entity))
+            return entity;
+
+        return entityManager.getReference(type, id);
+    }
+
     /**
      * Returns the order with the provided id.
      *
@@ -203,6 +495,25 @@ public class TransactionalRepository implements Repository, AutoCloseable
         }
     }
 
+    /**
+     * Returns the order with the provided id, together with the associations described by the provided fetch plan.
+     * The order and the associations are loaded using a single query.
+     *
+     * @param id   The id of the order to return.
+     * @param plan The associations to load together with the order.
+     * @return The order with the provided id, {@code null} when no such order exists.
+     */
+    @Override public Order getOrder(long id, OrderFetchPlan plan)
+    {
+        try {
+            TypedQuery<Order> query = entityManager.createNamedQuery("Order.findById", Order.class);
+            query.setParameter("id", id);
+            return withPlan(query, plan).getSingleResult();
+        } catch (NoResultException e) {
+            return null;
+        }
+    }
+
     /**
      * Returns all the orders in the repository.
      *
@@ -213,6 +524,46 @@ public class TransactionalRepository implements Repository, AutoCloseable
         return entityManager.createNamedQuery("Order.findAll", Order.class).getResultList();
     }
 
+    /**
+     * Returns all the orders in the repository, together with the associations described by the provided fetch plan.
+     * The orders and the associations are loaded using a single query.
+     *
+     * @param plan The associations to load together with the orders.
+     * @return The complete list of the orders in the repository.
+     */
+    @Override public List<Order> getOrders(OrderFetchPlan plan)
+    {
+        return distinct(withPlan(entityManager.createNamedQuery("Order.findAll", Order.class), plan).getResultList());
+    }
+
+    /**
+     * Returns the orders with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of orders to return.
+     * @return The page of orders.
+     */
+    @Override public List<Order> getOrders(long after, int limit)
+    {
+        return entityManager.createNamedQuery("Order.findAfter", Order.class)
+                            .setParameter("after", after)
+                            .setMaxResults(limit)
+                            .getResultList();
+    }
+
+    /**
+     * Returns a stream of all the orders. The orders are read from a database cursor, and are detached before they
+     * are returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders.
+     */
+    @Override public Stream<Order> streamOrders(int fetchSize)
+    {
+        return stream(entityManager.createNamedQuery("Order.findAll", Order.class), fetchSize);
+    }
+
     /**
      * Returns all the orders for the provided customers.
      *
@@ -228,22 +579,174 @@ public class TransactionalRepository implements Repository, AutoCloseable
     }
 
     /**
-     * Creates a new {@code OrderLine} and adds it to the provided {@code Order}.
+     * Returns all the orders for the provided customers, together with the associations described by the provided
+     * fetch plan. The orders and the associations are loaded using a single query.
+     *
+     * @param customer The customer to return the order of.
+     * @param plan     The associations to load together with the orders.
+     * @return The complete list of the orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer, OrderFetchPlan plan)
+    {
+        TypedQuery<Order> query = entityManager.createNamedQuery("Order.findByCustomer", Order.class);
+        query.setParameter("customer", customer);
+        return distinct(withPlan(query, plan).getResultList());
+    }
+
+    /**
+     * Applies the entity graph of the provided fetch plan to the provided query.
+     *
+     * @param query The query to apply the fetch plan to.
+     * @param plan  The fetch plan to apply.
+     * @return The provided query.
+     */
+    private TypedQuery<Order> withPlan(TypedQuery<Order> query, OrderFetchPlan plan)
+    {
+        return query.setHint("javax.persistence.fetchgraph", entityManager.getEntityGraph(plan.getGraph()));
+    }
+
+    /**
+     * Removes the duplicate entities from the provided query results. Fetching a collection in the same query as its
+     * owner repeats the owner once for each element in the collection.
+     *
+     * @param results The query results to remove duplicates from.
+     * @param <T>     The type of entity in the results.
+     * @return The results without duplicates, in the order they first appeared.
+     */
+    private static <T> List<T> distinct(List<T> results)
+    {
+        Set<T>  seen     = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<T> distinct = new ArrayList<>(results.size());
+        for (T result : results)
+            if (seen.add(result))
+                distinct.add(result);
+
+        return distinct;
+    }
+
+    /**
+     * Returns the orders for the provided customer with an id greater than the provided id, sorted by their id. The
+     * last id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the orders of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of orders to return.
+     * @return The page of orders belonging to the provided customer.
+     */
+    @Override public List<Order> getOrders(Customer customer, long after, int limit)
+    {
+        return entityManager.createNamedQuery("Order.findByCustomerAfter", Order.class)
+                            .setParameter("customer", customer)
+                            .setParameter("after", after)
+                            .setMaxResults(limit)
+                            .getResultList();
+    }
+
+    /**
+     * Returns a stream of the orders for the provided customer. The orders are read from a database cursor, and are
+     * detached before they are returned. The returned stream must be closed.
+     *
+     * @param customer  The customer to return the orders of.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of orders belonging to the provided customer.
+     */
+    @Override public Stream<Order> streamOrders(Customer customer, int fetchSize)
+    {
+        TypedQuery<Order> query = entityManager.createNamedQuery("Order.findByCustomer", Order.class);
+        query.setParameter("customer", customer);
+        return stream(query, fetchSize);
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer, sorted by the id of the order. The
+     * summaries are created by a constructor expression, so the orders are not loaded into the persistence context.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @return The summaries of the orders belonging to the provided customer.
+     */
+    @Override public List<OrderSummary> getOrderSummaries(Customer customer)
+    {
+        return entityManager.createNamedQuery("Order.summariesByCustomer", OrderSummary.class)
+                            .setParameter("customer", customer)
+                            .getResultList();
+    }
+
+    /**
+     * Returns summaries of the orders belonging to the provided customer with an id greater than the provided id,
+     * sorted by the id of the order. The last order id of the returned page is used to retrieve the next page.
+     *
+     * @param customer The customer to return the order summaries of.
+     * @param after    The id after which orders are returned. Use {@code 0} to retrieve the first page.
+     * @param limit    The maximum number of summaries to return.
+     * @return The page of order summaries.
+     */
+    @Override public List<OrderSummary> getOrderSummaries(Customer customer, long after, int limit)
+    {
+        return entityManager.createNamedQuery("Order.summariesByCustomerAfter", OrderSummary.class)
+                            .setParameter("customer", customer)
+                            .setParameter("after", after)
+                            .setMaxResults(limit)
+                            .getResultList();
+    }
+
+    /**
+     * Creates a new {@code OrderLine} and adds it to the provided {@code Order}. A detached order is merged, which
+     * fails when the order has been changed since the provided copy was read. The total of the order is incremented in
+     * memory, and is written together with the incremented version of the order when the transaction is flushed, so
+     * that concurrent transactions adding lines to the same order conflict instead of overwriting each other.
      *
      * @param order    The order to add the newly created {@code OrderLine} to.
      * @param quantity The number of the provided item to include in the {@code OrderLine}.
      * @param itemType The {@code ItemType} to place in the {@code OrderLine}.
-     * @return The newly created {@code OrderLine} entity.
+     * @return The newly created {@code OrderLine} entity, whose {@link OrderLine#getOrder()} is the managed version of
+     * the provided order.
+     * @throws OptimisticLockException When the provided order is stale.
      */
     public OrderLine createOrderLine(Order order, long quantity, ItemType itemType)
     {
-        OrderLine line = new OrderLine(quantity, itemType);
+        Order     managed = entityManager.merge(order);
+        OrderLine line    = new OrderLine(quantity, itemType);
+        line.setOrder(managed);
         entityManager.persist(line);
-        order.addLine(line);
-        entityManager.merge(order);
+        managed.addLine(line);
+        addToTotal(managed, quantity * itemType.getPrice());
         return line;
     }
 
+    /**
+     * Adds the provided lines to the provided {@code Order}. The lines are persisted in the current transaction, and
+     * are written in a single batch when the transaction is flushed. Unlike
+     * {@link #createOrderLine(Order, long, ItemType)}, a detached order is not merged, so its lines are not loaded;
+     * only the row of the order is read. The total and the version of the order are written as when adding a single
+     * line, and the total of the provided order is set to the new total.
+     *
+     * @param order The order to add the lines to. The order must have been persisted already.
+     * @param lines The lines to add. Each line is created using {@link OrderLine#OrderLine(long, ItemType)}, and must
+     *              not have been persisted already.
+     * @return The provided lines, which are assigned their ids when they are persisted.
+     */
+    @Override public List<OrderLine> createOrderLines(Order order, List<OrderLine> lines)
+    {
+        if (lines.isEmpty())
+            return lines;
+
+        Order managed = managed(Order.class, order, order.getId());
+        long  amount  = total(lines);
+        for (OrderLine line : lines) {
+            line.setItem(managed(ItemType.class, line.getItem(), line.getItem().getId()));
+            line.setOrder(managed);
+            if (managed == order)
+                order.addLine(line);
+            entityManager.persist(line);
+        }
+
+        addToTotal(managed, amount);
+        if (managed != order)
+            order.setTotal(managed.getTotal());
+
+        return lines;
+    }
+
     /**
      * Creates a new {@code OrderLine} and adds it to the provided {@code OrderLine}.
      *
@@ -260,17 +763,106 @@ public class TransactionalRepository implements Repository, AutoCloseable
     }
 
     /**
-     * Returns the total price of the provided {@code Order}.
+     * Returns the total price of the provided {@code Order}. The total is maintained on the order whenever lines are
+     * added, so it is read without summing the lines.
      *
      * @param order The order to find the total of.
-     * @return The total price of the provided {@code Order.}
+     * @return The total price of the provided {@code Order}, {@code 0} when no such order exists.
      */
     @Override public long getTotal(Order order)
     {
-        return order.getLines()
-                    .stream()
-                    .map(l -> l.getQuantity() * l.getItem().getPrice())
-                    .reduce(0l, Math::addExact);
+        try {
+            return entityManager.createNamedQuery("Order.total", Long.class)
+                                .setParameter("id", order.getId())
+                                .getSingleResult();
+        } catch (NoResultException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the totals of the provided orders. The totals are found using a single query.
+     *
+     * @param orders The orders to find the totals of.
+     * @return The totals of the provided orders, mapped by the id of the order.
+     */
+    @Override public OrderTotals getTotals(Collection<Order> orders)
+    {
+        if (orders.isEmpty())
+            return OrderTotals.of(Collections.emptyList());
+
+        List<Long> ids = new ArrayList<>(orders.size());
+        for (Order order : orders)
+            ids.add(order.getId());
+
+        return OrderTotals.of(entityManager.createNamedQuery("Order.totalsById", Object[].class)
+                                           .setParameter("ids", ids)
+                                           .getResultList());
+    }
+
+    /**
+     * Returns the totals of the orders belonging to the provided customer. The totals are found using a single query.
+     *
+     * @param customer The customer to find the order totals of.
+     * @return The totals of the orders belonging to the provided customer, mapped by the id of the order.
+     */
+    @Override public OrderTotals getTotals(Customer customer)
+    {
+        return OrderTotals.of(entityManager.createNamedQuery("Order.totalsByCustomer", Object[].class)
+                                           .setParameter("customer", customer)
+                                           .getResultList());
+    }
+
+    /**
+     * Returns the ids of the orders with an id greater than the provided id, whose maintained total does not match
+     * the sum of their lines, sorted by their id.
+     *
+     * @param after The id after which orders are examined. Use {@code 0} to start from the first order.
+     * @param limit The maximum number of ids to return.
+     * @return The ids of the orders whose total has drifted.
+     * @see OrderTotalVerifier
+     */
+    public List<Long> findDriftedTotals(long after, int limit)
+    {
+        return entityManager.createNamedQuery("Order.findDriftedAfter", Long.class)
+                            .setParameter("after", after)
+                            .setMaxResults(limit)
+                            .getResultList();
+    }
+
+    /**
+     * Returns a stream of the lines of the orders with an id greater than the provided id, sorted by their order id.
+     * Each row contains the id of the order, the id of the customer who owns the order, the id of the item type, the
+     * quantity and the price of the item type. The rows are read from a forward-only database cursor, without
+     * creating entities, and the returned stream must be closed.
+     *
+     * @param after     The id after which the lines of orders are returned. Use {@code 0} to return every line.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of rows.
+     * @see SalesSnapshot
+     */
+    public Stream<Object[]> streamSales(long after, int fetchSize)
+    {
+        return scroll(entityManager.createNamedQuery("OrderLine.salesAfter").setParameter("after", after),
+                      fetchSize, ScrollableResults::get);
+    }
+
+    /**
+     * Recomputes the maintained totals of the orders with the provided ids from their lines, and increments their
+     * versions, so that copies of the orders read before their totals were repaired are stale.
+     *
+     * @param ids The ids of the orders to recompute the totals of.
+     * @return The number of orders that were updated.
+     * @see OrderTotalVerifier
+     */
+    public int rebuildTotals(Collection<Long> ids)
+    {
+        if (ids.isEmpty())
+            return 0;
+
+        return entityManager.createNamedQuery("Order.rebuildTotals")
+                            .setParameter("ids", ids)
+                            .executeUpdate();
     }
 
     /**
@@ -284,6 +876,81 @@ public class TransactionalRepository implements Repository, AutoCloseable
         return entityManager.find(ItemType.class, id);
     }
 
+    /**
+     * Returns the items with the provided ids. Items that are managed or held in the second-level cache are not read
+     * from the database, and the remaining items are loaded using {@code IN} queries of at most
+     * {@link TransactionalRepository#MULTI_GET_BATCH_SIZE} ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<ItemType> getItems(long[] ids)
+    {
+        return multiGet(ItemType.class, ids);
+    }
+
+    /**
+     * Returns the items with the provided ids. Items that are managed or held in the second-level cache are not read
+     * from the database, and the remaining items are loaded using {@code IN} queries of at most
+     * {@link TransactionalRepository#MULTI_GET_BATCH_SIZE} ids.
+     *
+     * @param ids The ids of the items to return.
+     * @return The items with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    @Override public EntityLookup<ItemType> getItems(Collection<Long> ids)
+    {
+        return multiGet(ItemType.class, unbox(ids));
+    }
+
+    /**
+     * Loads the entities of the provided type with the provided ids. Entities held in the second-level cache are
+     * first placed in the persistence context, so that only the entities found in neither the persistence context nor
+     * the second-level cache are read from the database.
+     *
+     * @param type The type of the entities.
+     * @param ids  The ids of the entities to load.
+     * @param <T>  The type of the entities.
+     * @return The entities with the provided ids in the order of the ids, together with the ids that were not found.
+     */
+    private <T> EntityLookup<T> multiGet(Class<T> type, long[] ids)
+    {
+        if (ids.length == 0)
+            return new EntityLookup<>(ids, Collections.emptyList());
+
+        Cache              cache = entityManager.getEntityManagerFactory().getCache();
+        List<Serializable> boxed = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            boxed.add(id);
+            if (cache.contains(type, id))
+                entityManager.find(type, id);
+        }
+
+        List<T> entities = entityManager.unwrap(Session.class)
+                                        .byMultipleIds(type)
+                                        .withBatchSize(multiGetBatchSize)
+                                        .enableSessionCheck(true)
+                                        .enableOrderedReturn(true)
+                                        .multiLoad(boxed);
+
+        return new EntityLookup<>(ids, entities);
+    }
+
+    /**
+     * Copies the provided ids into an array.
+     *
+     * @param ids The ids to copy.
+     * @return The array containing the provided ids, in the order they were provided.
+     */
+    private static long[] unbox(Collection<Long> ids)
+    {
+        long[] unboxed = new long[ids.size()];
+        int    index   = 0;
+        for (Long id : ids)
+            unboxed[index++] = id;
+
+        return unboxed;
+    }
+
     /**
      * Returns all the items in the repository.
      *
@@ -293,4 +960,84 @@ public class TransactionalRepository implements Repository, AutoCloseable
     {
         return entityManager.createNamedQuery("ItemType.findAll").getResultList();
     }
+
+    /**
+     * Returns the items with an id greater than the provided id, sorted by their id. The last id of the returned page
+     * is used to retrieve the next page.
+     *
+     * @param after The id after which items are returned. Use {@code 0} to retrieve the first page.
+     * @param limit The maximum number of items to return.
+     * @return The page of items.
+     */
+    @Override public List<ItemType> getItems(long after, int limit)
+    {
+        return entityManager.createNamedQuery("ItemType.findAfter", ItemType.class)
+                            .setParameter("after", after)
+                            .setMaxResults(limit)
+                            .getResultList();
+    }
+
+    /**
+     * Returns a stream of all the items. The items are read from a database cursor, and are detached before they are
+     * returned. The returned stream must be closed.
+     *
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @return The stream of items.
+     */
+    @Override public Stream<ItemType> streamItems(int fetchSize)
+    {
+        return stream(entityManager.createNamedQuery("ItemType.findAll", ItemType.class), fetchSize);
+    }
+
+    /**
+     * Returns a stream of the results of the provided query. The results are read from a forward-only database
+     * cursor, and each entity is detached before it is returned, so the persistence context does not grow while the
+     * stream is consumed. The cursor is released when the stream is closed.
+     *
+     * @param query     The query to stream the results of.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @param <T>       The type of entity returned by the query.
+     * @return The stream of results.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Stream<T> stream(TypedQuery<T> query, int fetchSize)
+    {
+        return scroll(query, fetchSize, results -> {
+            T entity = (T) results.get(0);
+            entityManager.detach(entity);
+            return entity;
+        });
+    }
+
+    /**
+     * Returns a stream of the rows of the provided query, read from a forward-only database cursor. The cursor is
+     * released when the stream is closed.
+     *
+     * @param query     The query to stream the rows of.
+     * @param fetchSize The number of rows to retrieve from the database in each round trip.
+     * @param row       Converts the current row of the cursor to the element returned by the stream.
+     * @param <T>       The type of element returned by the stream.
+     * @return The stream of rows.
+     */
+    private <T> Stream<T> scroll(Query query, int fetchSize, Function<ScrollableResults, T> row)
+    {
+        ScrollableResults results = query.unwrap(org.hibernate.query.Query.class)
+                                         .setFetchSize(fetchSize)
+                                         .setReadOnly(true)
+                                         .scroll(ScrollMode.FORWARD_ONLY);
+
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+        {
+            @Override public boolean tryAdvance(Consumer<? super T> action)
+            {
+                if (!results.next())
+                    return false;
+
+                action.accept(row.apply(results));
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(results::close);
+    }
 }
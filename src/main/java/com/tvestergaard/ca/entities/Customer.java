@@ -1,17 +1,26 @@
 package com.tvestergaard.ca.entities;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 @Entity
-@NamedQuery(name = "Customer.findAll", query = "SELECT c FROM Customer c")
+@DynamicUpdate
+@Table(indexes = @Index(name = "customer_email", columnList = "email"))
+@NamedQueries({
+        @NamedQuery(name = "Customer.findAll", query = "SELECT c FROM Customer c"),
+        @NamedQuery(name = "Customer.findByEmail", query = "SELECT c FROM Customer c WHERE c.email = :email"),
+        @NamedQuery(name = "Customer.findAfter", query = "SELECT c FROM Customer c WHERE c.id > :after ORDER BY c.id")
+})
 public class Customer
 {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "customer_id")
+    @GenericGenerator(name = "customer_id", strategy = "com.tvestergaard.ca.entities.PooledIdGenerator")
     private long id;
 
     private String name;
@@ -75,20 +84,27 @@ public class Customer
         this.orders.add(order);
     }
 
-    @Override public boolean equals(Object o)
+    /**
+     * Compares the customers using their id, without touching their orders. Customers that have not been persisted are
+     * only equal to themselves. The id is read using {@link #getId()}, so comparing an uninitialized proxy does not
+     * load it.
+     */
+    @Override public final boolean equals(Object o)
     {
         if (this == o) return true;
         if (!(o instanceof Customer)) return false;
         Customer customer = (Customer) o;
-        return getId() == customer.getId() &&
-                Objects.equals(getName(), customer.getName()) &&
-                Objects.equals(getEmail(), customer.getEmail()) &&
-                Objects.equals(new ArrayList<>(getOrders()), new ArrayList<>(customer.getOrders()));
+        return getId() != 0 && getId() == customer.getId();
     }
 
-    @Override public int hashCode()
+    /**
+     * Returns a hash code based on the id of the customer, read using {@link #getId()}, so that calling it on an
+     * uninitialized proxy does not load the customer. The hash code changes when the customer is assigned its id, so a
+     * customer must not be added to a hashed collection before it has been persisted.
+     */
+    @Override public final int hashCode()
     {
-        return Objects.hash(getId(), getName(), getEmail(), getOrders());
+        return Long.hashCode(getId());
     }
 
     @Override public String toString()
@@ -1,20 +1,42 @@
 package com.tvestergaard.ca.entities;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
-import java.util.Objects;
 
 @Entity
-@NamedQuery(name = "ItemType.findAll", query = "SELECT i FROM ItemType i")
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "itemType")
+@NamedQueries({
+        @NamedQuery(name = "ItemType.findAll", query = "SELECT i FROM ItemType i",
+                    hints = {
+                            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+                            @QueryHint(name = "org.hibernate.cacheRegion", value = "itemTypeQueries")
+                    }),
+        @NamedQuery(name = "ItemType.findAfter", query = "SELECT i FROM ItemType i WHERE i.id > :after ORDER BY i.id")
+})
 public class ItemType
 {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "item_type_id")
+    @GenericGenerator(name = "item_type_id", strategy = "com.tvestergaard.ca.entities.PooledIdGenerator")
     private long   id;
     private String name;
     private String description;
     private long   price;
 
+    /**
+     * The version of the item type, incremented whenever the item type is updated, so that a price change based on a
+     * stale copy of the item type is rejected instead of overwriting a concurrent change.
+     */
+    @Version
+    private long version;
+
     public ItemType()
     {
 
@@ -47,6 +69,11 @@ public class ItemType
         return this.price;
     }
 
+    public long getVersion()
+    {
+        return this.version;
+    }
+
     public void setId(long id)
     {
         this.id = id;
@@ -67,20 +94,31 @@ public class ItemType
         this.price = price;
     }
 
-    @Override public boolean equals(Object o)
+    public void setVersion(long version)
+    {
+        this.version = version;
+    }
+
+    /**
+     * Compares the item types using their id. Item types that have not been persisted are only equal to themselves. The
+     * id is read using {@link #getId()}, so comparing an uninitialized proxy does not load it.
+     */
+    @Override public final boolean equals(Object o)
     {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof ItemType)) return false;
         ItemType itemType = (ItemType) o;
-        return id == itemType.id &&
-               price == itemType.price &&
-               Objects.equals(name, itemType.name) &&
-               Objects.equals(description, itemType.description);
+        return getId() != 0 && getId() == itemType.getId();
     }
 
-    @Override public int hashCode()
+    /**
+     * Returns a hash code based on the id of the item type, read using {@link #getId()}, so that calling it on an
+     * uninitialized proxy does not load the item type. The hash code changes when the item type is assigned its id, so
+     * an item type must not be added to a hashed collection before it has been persisted.
+     */
+    @Override public final int hashCode()
     {
-        return Objects.hash(id, name, description, price);
+        return Long.hashCode(getId());
     }
 
     @Override public String toString()
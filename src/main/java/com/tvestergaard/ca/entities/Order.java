@@ -1,30 +1,84 @@
 package com.tvestergaard.ca.entities;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
 
 @Entity
-@Table(name = "order_")
+@Table(name = "order_", indexes = @Index(name = "order_customer", columnList = "customer_id"))
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = "Order.header"),
+        @NamedEntityGraph(name = "Order.lines", attributeNodes = @NamedAttributeNode("lines")),
+        @NamedEntityGraph(name = "Order.details",
+                          attributeNodes = {
+                                  @NamedAttributeNode("customer"),
+                                  @NamedAttributeNode(value = "lines", subgraph = "lines")
+                          },
+                          subgraphs = @NamedSubgraph(name = "lines", attributeNodes = @NamedAttributeNode("item")))
+})
 @NamedQueries({
         @NamedQuery(name = "Order.findAll", query = "SELECT o FROM Order o"),
         @NamedQuery(name = "Order.findById", query = "SELECT o FROM Order o WHERE o.id = :id"),
-        @NamedQuery(name = "Order.findByCustomer", query = "SELECT o FROM Order o WHERE o.customer = :customer")
+        @NamedQuery(name = "Order.findByCustomer", query = "SELECT o FROM Order o WHERE o.customer = :customer"),
+        @NamedQuery(name = "Order.findAfter", query = "SELECT o FROM Order o WHERE o.id > :after ORDER BY o.id"),
+        @NamedQuery(name = "Order.findByCustomerAfter", query = "SELECT o FROM Order o " +
+                                                                "WHERE o.customer = :customer AND o.id > :after " +
+                                                                "ORDER BY o.id"),
+        @NamedQuery(name = "Order.total", query = "SELECT o.total FROM Order o WHERE o.id = :id"),
+        @NamedQuery(name = "Order.totalsById", query = "SELECT o.id, o.total FROM Order o " +
+                                                       "WHERE o.id IN :ids ORDER BY o.id"),
+        @NamedQuery(name = "Order.totalsByCustomer", query = "SELECT o.id, o.total FROM Order o " +
+                                                             "WHERE o.customer = :customer ORDER BY o.id"),
+        @NamedQuery(name = "Order.summariesByCustomer",
+                    query = "SELECT NEW com.tvestergaard.ca.OrderSummary(o.id, c.id, c.name, COUNT(l), o.total) " +
+                            "FROM Order o JOIN o.customer c LEFT JOIN o.lines l " +
+                            "WHERE c = :customer GROUP BY o.id, c.id, c.name, o.total ORDER BY o.id"),
+        @NamedQuery(name = "Order.summariesByCustomerAfter",
+                    query = "SELECT NEW com.tvestergaard.ca.OrderSummary(o.id, c.id, c.name, COUNT(l), o.total) " +
+                            "FROM Order o JOIN o.customer c LEFT JOIN o.lines l " +
+                            "WHERE c = :customer AND o.id > :after " +
+                            "GROUP BY o.id, c.id, c.name, o.total ORDER BY o.id"),
+        @NamedQuery(name = "Order.findDriftedAfter", query = "SELECT o.id FROM Order o " +
+                                                             "WHERE o.id > :after AND o.total <> " +
+                                                             "(SELECT COALESCE(SUM(l.quantity * l.item.price), 0) " +
+                                                             "FROM OrderLine l WHERE l.order.id = o.id) " +
+                                                             "ORDER BY o.id"),
+        @NamedQuery(name = "Order.rebuildTotals", query = "UPDATE Order o SET o.total = " +
+                                                          "(SELECT COALESCE(SUM(l.quantity * l.item.price), 0) " +
+                                                          "FROM OrderLine l WHERE l.order.id = o.id), " +
+                                                          "o.version = o.version + 1 " +
+                                                          "WHERE o.id IN :ids")
 })
 public class Order
 {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "order_id")
+    @GenericGenerator(name = "order_id", strategy = "com.tvestergaard.ca.entities.PooledIdGenerator")
     private long id;
 
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private Customer customer;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "order")
     private List<OrderLine> lines = new ArrayList<>();
 
+    /**
+     * The sum of the quantity multiplied by the price of each line. The total is updated together with the version of
+     * the order, so that concurrent line additions are not overwritten by a stale copy of the order.
+     */
+    private long total;
+
+    /**
+     * The version of the order, incremented whenever the order is updated, lines are added to it using
+     * {@code TransactionalRepository.createOrderLine} or {@code createOrderLines}, or its total is rebuilt, so that
+     * changes based on a stale copy of the order are rejected instead of overwriting concurrent changes.
+     */
+    @Version
+    private long version;
+
     public Order()
     {
 
@@ -56,6 +110,11 @@ public class Order
         return this.lines;
     }
 
+    public long getTotal()
+    {
+        return this.total;
+    }
+
     public void setId(long id)
     {
         this.id = id;
@@ -71,31 +130,54 @@ public class Order
         this.lines = lines;
     }
 
+    public void setTotal(long total)
+    {
+        this.total = total;
+    }
+
+    public long getVersion()
+    {
+        return this.version;
+    }
+
+    public void setVersion(long version)
+    {
+        this.version = version;
+    }
+
     public void addLine(OrderLine line)
     {
         this.lines.add(line);
     }
 
-    @Override public boolean equals(Object o)
+    /**
+     * Compares the orders using their id, without touching the customer or the lines, so that comparing orders never
+     * loads their associations. Orders that have not been persisted are only equal to themselves. The id is read using
+     * {@link #getId()}, so comparing an uninitialized proxy does not load it.
+     */
+    @Override public final boolean equals(Object o)
     {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof Order)) return false;
         Order order = (Order) o;
-        return id == order.id &&
-                Objects.equals(customer, order.customer) &&
-                Objects.equals(new ArrayList<>(lines), new ArrayList<>(order.lines));
+        return getId() != 0 && getId() == order.getId();
     }
 
-    @Override public int hashCode()
+    /**
+     * Returns a hash code based on the id of the order, read using {@link #getId()}, so that calling it on an
+     * uninitialized proxy does not load the order. The hash code changes when the order is assigned its id, so a order
+     * must not be added to a hashed collection before it has been persisted.
+     */
+    @Override public final int hashCode()
     {
-        return Objects.hash(id, customer, new ArrayList<>(lines));
+        return Long.hashCode(getId());
     }
 
     @Override public String toString()
     {
         return "Order{" +
                 "id=" + id +
-                ", customer=" + customer +
+                ", customer=" + (customer == null ? null : customer.getId()) +
                 '}';
     }
 }
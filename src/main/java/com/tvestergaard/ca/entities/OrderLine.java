@@ -1,22 +1,34 @@
 package com.tvestergaard.ca.entities;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
-import java.util.Objects;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "order_line_order", columnList = "order_id"),
+        @Index(name = "order_line_item", columnList = "item_fk")
+})
+@NamedQueries({
+        @NamedQuery(name = "OrderLine.salesAfter",
+                    query = "SELECT o.id, o.customer.id, i.id, l.quantity, i.price " +
+                            "FROM OrderLine l JOIN l.order o JOIN l.item i " +
+                            "WHERE o.id > :after ORDER BY o.id")
+})
 public class OrderLine
 {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "order_line_id")
+    @GenericGenerator(name = "order_line_id", strategy = "com.tvestergaard.ca.entities.PooledIdGenerator")
     private long id;
     private long quantity;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "item_fk")
     private ItemType item;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Order order;
 
     public OrderLine()
@@ -70,20 +82,27 @@ public class OrderLine
         this.order = order;
     }
 
-    @Override public boolean equals(Object o)
+    /**
+     * Compares the lines using their id, without touching the order or the item. Lines that have not been persisted are
+     * only equal to themselves. The id is read using {@link #getId()}, so comparing an uninitialized proxy does not
+     * load it.
+     */
+    @Override public final boolean equals(Object o)
     {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        if (!(o instanceof OrderLine)) return false;
         OrderLine line = (OrderLine) o;
-        return id == line.id &&
-               quantity == line.quantity &&
-               Objects.equals(item, line.item) &&
-               Objects.equals(order, line.order);
+        return getId() != 0 && getId() == line.getId();
     }
 
-    @Override public int hashCode()
+    /**
+     * Returns a hash code based on the id of the line, read using {@link #getId()}, so that calling it on an
+     * uninitialized proxy does not load the line. The hash code changes when the line is assigned its id, so a line
+     * must not be added to a hashed collection before it has been persisted.
+     */
+    @Override public final int hashCode()
     {
-        return Objects.hash(id, quantity, item, order);
+        return Long.hashCode(getId());
     }
 
     @Override public String toString()
@@ -91,8 +110,8 @@ public class OrderLine
         return "OrderLine{" +
                "id=" + id +
                ", quantity=" + quantity +
-               ", item=" + item +
-               ", order=" + order +
+               ", item=" + (item == null ? null : item.getId()) +
+               ", order=" + (order == null ? null : order.getId()) +
                '}';
     }
 }
@@ -0,0 +1,52 @@
+package com.tvestergaard.ca.entities;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.TableGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Table based identifier generator, that hands out identifiers in blocks. Since the identifiers are known before the
+ * entities are inserted, Hibernate is able to batch the inserts. The generator uses a row for each entity table in
+ * the {@code hibernate_sequences} table.
+ * <p>
+ * The number of identifiers allocated in each block is read from the {@link PooledIdGenerator#ALLOCATION_SIZE}
+ * property of the persistence unit, and defaults to {@link PooledIdGenerator#DEFAULT_ALLOCATION_SIZE}. Identifiers
+ * that are allocated but not used are lost when the {@code EntityManagerFactory} is closed.
+ * <p>
+ * The generator can be replaced with {@code IDENTITY} columns by including the {@code META-INF/identity-orm.xml}
+ * mapping file in the persistence unit.
+ */
+public class PooledIdGenerator extends TableGenerator
+{
+
+    /**
+     * The name of the persistence unit property containing the number of identifiers allocated in each block.
+     */
+    public static final String ALLOCATION_SIZE = "com.tvestergaard.ca.id.allocation_size";
+
+    /**
+     * The number of identifiers allocated in each block, when no {@link PooledIdGenerator#ALLOCATION_SIZE} is
+     * configured.
+     */
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException
+    {
+        ConfigurationService configuration = serviceRegistry.getService(ConfigurationService.class);
+        int allocationSize = configuration.getSetting(
+                ALLOCATION_SIZE,
+                value -> Integer.parseInt(value.toString().trim()),
+                DEFAULT_ALLOCATION_SIZE);
+
+        params.setProperty(TABLE_PARAM, DEF_TABLE);
+        params.setProperty(CONFIG_PREFER_SEGMENT_PER_ENTITY, "true");
+        params.setProperty(INCREMENT_PARAM, Integer.toString(allocationSize));
+        params.setProperty(OPT_PARAM, "pooled-lo");
+
+        super.configure(type, params, serviceRegistry);
+    }
+}
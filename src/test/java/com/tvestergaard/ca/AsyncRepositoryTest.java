@@ -0,0 +1,93 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class AsyncRepositoryTest
+{
+
+    private static final EntityManagerFactory emf = Persistence.createEntityManagerFactory("jpau-test");
+
+    @Test
+    public void findCustomer() throws Exception
+    {
+        try (AsyncRepository instance = new AsyncRepository(new Facade(emf), 2, 10)) {
+            Customer customer = instance.findCustomer(1).get();
+            assertEquals("Thomas Vestergaard", customer.getName());
+        }
+    }
+
+    @Test
+    public void createCustomer() throws Exception
+    {
+        try (AsyncRepository instance = new AsyncRepository(new Facade(emf), 2, 10)) {
+            Customer customer = instance.createCustomer("Name", "Email").get();
+            assertEquals(customer.getName(), instance.findCustomer(customer.getId()).get().getName());
+        }
+    }
+
+    @Test
+    public void rejectsWhenSaturated() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        try (AsyncRepository instance = new AsyncRepository(blockingRepository(latch), 1, 1)) {
+            CompletableFuture<Customer> running = instance.findCustomer(1);
+            CompletableFuture<Customer> queued  = instance.findCustomer(2);
+            while (instance.getQueuedCount() == 0 || instance.getActiveCount() == 0)
+                Thread.yield();
+
+            CompletableFuture<Customer> rejected = instance.findCustomer(3);
+            assertTrue(rejected.isCompletedExceptionally());
+            assertEquals(1, instance.getRejectedCount());
+            try {
+                rejected.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            latch.countDown();
+            assertNull(running.get());
+            assertNull(queued.get());
+        }
+    }
+
+    @Test
+    public void closeCompletesQueuedOperations() throws Exception
+    {
+        CountDownLatch              latch = new CountDownLatch(1);
+        CompletableFuture<Customer> queued;
+        try (AsyncRepository instance = new AsyncRepository(blockingRepository(latch), 1, 10)) {
+            instance.findCustomer(1);
+            queued = instance.findCustomer(2);
+            latch.countDown();
+        }
+
+        assertTrue(queued.isDone());
+        assertFalse(queued.isCompletedExceptionally());
+    }
+
+    /**
+     * Creates a {@link Repository} where every operation blocks until the provided latch is released, and then
+     * returns {@code null}.
+     */
+    private static Repository blockingRepository(CountDownLatch latch)
+    {
+        return (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(),
+                                                   new Class[]{Repository.class},
+                                                   (proxy, method, args) -> {
+                                                       latch.await();
+                                                       return null;
+                                                   });
+    }
+}
@@ -0,0 +1,167 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BulkImporterTest
+{
+
+    private static final EntityManagerFactory emf = Persistence.createEntityManagerFactory("jpau-test");
+
+    @Test
+    public void importCustomersCsv()
+    {
+        StringBuilder input = new StringBuilder("name,email\n");
+        for (int x = 0; x < 250; x++)
+            input.append("\"Imported, ").append(x).append("\",imported").append(x).append("@example.com\n");
+
+        AtomicInteger reports  = new AtomicInteger();
+        BulkImporter  instance = new BulkImporter(emf, 3, 50);
+        ImportReport  report   = instance.importCustomers(new StringReader(input.toString()), ImportFormat.CSV,
+                                                          progress -> reports.incrementAndGet());
+
+        assertTrue(report.isCompleted());
+        assertEquals(250, report.getRowsRead());
+        assertEquals(250, report.getRowsImported());
+        assertEquals(0, report.getRowsFailed());
+        assertEquals(5, reports.get());
+
+        long imported = new Facade(emf).getCustomers().stream()
+                                       .filter(customer -> customer.getName().startsWith("Imported, "))
+                                       .count();
+        assertTrue(imported >= 250);
+    }
+
+    @Test
+    public void importItemsJsonLines()
+    {
+        int    before = new Facade(emf).getItems().size();
+        String input  = "{\"name\": \"Imported\", \"description\": \"Line \\\"one\\\"\", \"price\": 10}\n" +
+                        "\n" +
+                        "{\"name\": \"Imported\", \"description\": \"Two\", \"price\": 20}\n";
+
+        ImportReport report = new BulkImporter(emf, 2).importItems(new StringReader(input), ImportFormat.JSON_LINES);
+
+        assertEquals(2, report.getRowsImported());
+        assertEquals(before + 2, new Facade(emf).getItems().size());
+    }
+
+    @Test
+    public void importOrders()
+    {
+        Customer customer = new Facade(emf).createCustomer("Orderer", "orderer@order.com");
+        String input = "order,customer,item,quantity\n" +
+                       "a," + customer.getId() + ",1,2\n" +
+                       "a," + customer.getId() + ",2,1\n" +
+                       "b," + customer.getId() + ",3,4\n";
+
+        ImportReport report = new BulkImporter(emf, 2, 1).importOrders(new StringReader(input), ImportFormat.CSV);
+        assertEquals(3, report.getRowsImported());
+
+        Facade      facade = new Facade(emf);
+        List<Order> orders = facade.getOrders(customer, OrderFetchPlan.LINES);
+        assertEquals(2, orders.size());
+        assertEquals(3, orders.get(0).getLines().size() + orders.get(1).getLines().size());
+        assertEquals(1 * 2 + 2 * 1 + 3 * 4, facade.getTotal(orders.get(0)) + facade.getTotal(orders.get(1)));
+    }
+
+    @Test
+    public void importOrdersInSingleChunk()
+    {
+        Customer customer = new Facade(emf).createCustomer("Orderer", "orderer@order.com");
+        String input = "order,customer,item,quantity\n" +
+                       "a," + customer.getId() + ",1,2\n" +
+                       "a," + customer.getId() + ",2,1\n" +
+                       "b," + customer.getId() + ",3,4\n" +
+                       "c," + customer.getId() + ",1,5\n";
+
+        ImportReport report = new BulkImporter(emf, 1, 100).importOrders(new StringReader(input), ImportFormat.CSV);
+        assertEquals(4, report.getRowsImported());
+
+        Facade      facade = new Facade(emf);
+        List<Order> orders = facade.getOrders(customer, OrderFetchPlan.DETAILS);
+        assertEquals(3, orders.size());
+        for (Order order : orders) {
+            long expected = 0;
+            for (OrderLine line : order.getLines())
+                expected += line.getQuantity() * line.getItem().getPrice();
+            assertEquals(expected, facade.getTotal(order));
+        }
+    }
+
+    @Test
+    public void failedRowsDoNotAbortImport()
+    {
+        Customer customer = new Facade(emf).createCustomer("Orderer", "orderer@order.com");
+        String input = "order,customer,item,quantity\n" +
+                       "a," + customer.getId() + ",1,1\n" +
+                       "b," + customer.getId() + ",1,not a number\n" +
+                       "b," + customer.getId() + ",2,1\n" +
+                       "c," + customer.getId() + ",\"unterminated\n" +
+                       "d,0,1,1\n" +
+                       "e," + customer.getId() + ",2,1\n";
+
+        ImportReport report = new BulkImporter(emf, 2).importOrders(new StringReader(input), ImportFormat.CSV);
+
+        assertEquals(6, report.getRowsRead());
+        assertEquals(2, report.getRowsImported());
+        assertEquals(4, report.getRowsFailed());
+        assertEquals(3, report.getFailures().size());
+        assertEquals(2, new Facade(emf).getOrders(customer).size());
+    }
+
+    @Test
+    public void failedReadStopsWorkers() throws InterruptedException
+    {
+        Reader input = new Reader()
+        {
+            @Override public int read(char[] buffer, int offset, int length) throws IOException
+            {
+                throw new IOException("The input is unavailable.");
+            }
+
+            @Override public void close()
+            {
+            }
+        };
+
+        try {
+            new BulkImporter(emf, 2).importCustomers(input, ImportFormat.CSV);
+            fail();
+        } catch (UncheckedIOException e) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("bulk-import-")) {
+                    thread.join(5000);
+                    assertFalse(thread.isAlive());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void interruptedImportIsNotCompleted()
+    {
+        Thread.currentThread().interrupt();
+        try {
+            ImportReport report = new BulkImporter(emf, 2).importCustomers(
+                    new StringReader("name,email\nInterrupted,interrupted@example.com\n"), ImportFormat.CSV);
+            assertFalse(report.isCompleted());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FacadeRoutingTest
+{
+
+    private static final EntityManagerFactory primary = Persistence.createEntityManagerFactory("jpau-test-primary");
+    private static final EntityManagerFactory replica = Persistence.createEntityManagerFactory("jpau-test-replica");
+
+    @Test
+    public void readsFromReplica()
+    {
+        Facade instance = new Facade(primary, Collections.singletonList(replica));
+        instance.createCustomer("Written", "written@example.com");
+        assertFalse(containsName(instance.getCustomers(), "Written"));
+
+        new Facade(replica).createCustomer("Replicated", "replicated@example.com");
+        assertTrue(containsName(instance.getCustomers(), "Replicated"));
+    }
+
+    @Test
+    public void balancesReplicas()
+    {
+        Facade instance = new Facade(primary, Arrays.asList(primary, replica));
+        new Facade(primary).createCustomer("Balanced", "balanced@example.com");
+
+        boolean first  = containsName(instance.getCustomers(), "Balanced");
+        boolean second = containsName(instance.getCustomers(), "Balanced");
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    public void readsOwnWrites() throws Exception
+    {
+        Facade instance = new Facade(primary, Collections.singletonList(replica), 1, TimeUnit.HOURS);
+        instance.createCustomer("Sticky", "sticky@example.com");
+        assertTrue(containsName(instance.getCustomers(), "Sticky"));
+
+        List<Customer> other = CompletableFuture.supplyAsync(instance::getCustomers).get();
+        assertFalse(containsName(other, "Sticky"));
+    }
+
+    @Test
+    public void stickinessExpires() throws Exception
+    {
+        Facade instance = new Facade(primary, Collections.singletonList(replica), 1, TimeUnit.SECONDS);
+        instance.createCustomer("Expiring", "expiring@example.com");
+        assertTrue(containsName(instance.getCustomers(), "Expiring"));
+
+        Thread.sleep(1100);
+        assertFalse(containsName(instance.getCustomers(), "Expiring"));
+    }
+
+    private static boolean containsName(List<Customer> customers, String name)
+    {
+        for (Customer customer : customers)
+            if (name.equals(customer.getName()))
+                return true;
+
+        return false;
+    }
+}
@@ -0,0 +1,135 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.persistence.RollbackException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class FacadeTransactionTest
+{
+
+    private static final EntityManagerFactory emf    = Persistence.createEntityManagerFactory("jpau-test");
+    private final        Facade               facade = new Facade(emf);
+
+    @Test
+    public void inTransactionCommits()
+    {
+        Order order = facade.inTransaction(repository -> {
+            Customer customer = repository.createCustomer("Unit", "unit@example.com");
+            ItemType item     = repository.getItem(1);
+            Order    created  = repository.createOrder(customer);
+            repository.createOrderLine(created, 2, item);
+            return created;
+        });
+
+        assertNotNull(facade.findCustomer(order.getCustomer().getId()));
+        assertEquals(2 * facade.getItem(1).getPrice(), facade.getTotal(order));
+    }
+
+    @Test
+    public void runInTransactionRollsBack()
+    {
+        AtomicReference<Customer> customer = new AtomicReference<>();
+        try {
+            facade.runInTransaction(repository -> {
+                customer.set(repository.createCustomer("Rolled back", "rolled@example.com"));
+                throw new IllegalStateException();
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertNull(facade.findCustomer(customer.get().getId()));
+    }
+
+    @Test
+    public void nestedUnitRollsBackToSavepoint()
+    {
+        AtomicReference<Customer> inner = new AtomicReference<>();
+        Customer outer = facade.inTransaction(repository -> {
+            Customer created = repository.createCustomer("Outer", "outer@example.com");
+            try {
+                facade.runInTransaction(nested -> {
+                    assertSame(repository, nested);
+                    inner.set(nested.createCustomer("Inner", "inner@example.com"));
+                    throw new IllegalStateException();
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            return created;
+        });
+
+        assertEquals("Outer", facade.findCustomer(outer.getId()).getName());
+        assertNull(facade.findCustomer(inner.get().getId()));
+    }
+
+    @Test
+    public void nestedUnitCommitsWithEnclosingUnit()
+    {
+        Customer[] customers = facade.inTransaction(repository -> new Customer[]{
+                repository.createCustomer("First", "first@example.com"),
+                facade.inTransaction(nested -> nested.createCustomer("Second", "second@example.com"))
+        });
+
+        assertNotNull(facade.findCustomer(customers[0].getId()));
+        assertNotNull(facade.findCustomer(customers[1].getId()));
+    }
+
+    @Test
+    public void nestedPersistenceFailureRollsBackEnclosingUnit()
+    {
+        ItemType missing = new ItemType("Missing", "Not persisted", 1);
+        missing.setId(Long.MAX_VALUE);
+        missing.setVersion(1);
+
+        AtomicReference<Customer> outer = new AtomicReference<>();
+        try {
+            facade.runInTransaction(repository -> {
+                outer.set(repository.createCustomer("Doomed", "doomed@example.com"));
+                Order order = repository.createOrder(outer.get());
+                try {
+                    facade.runInTransaction(nested -> nested.createOrderLine(order, 1, missing));
+                    fail();
+                } catch (PersistenceException e) {
+                    // handled, but the transaction can no longer commit
+                }
+
+                assertTrue(repository.isRollbackOnly());
+            });
+            fail();
+        } catch (RollbackException e) {
+            // expected
+        }
+
+        assertNull(facade.findCustomer(outer.get().getId()));
+    }
+
+    @Test
+    public void errorRollsBack()
+    {
+        AtomicReference<Customer> customer = new AtomicReference<>();
+        try {
+            facade.runInTransaction(repository -> {
+                customer.set(repository.createCustomer("Errored", "errored@example.com"));
+                throw new InternalError();
+            });
+            fail();
+        } catch (InternalError e) {
+            // expected
+        }
+
+        assertNull(facade.findCustomer(customer.get().getId()));
+    }
+}
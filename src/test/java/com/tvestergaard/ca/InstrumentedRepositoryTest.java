@@ -0,0 +1,99 @@
+package com.tvestergaard.ca;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedRepositoryTest
+{
+
+    private static final EntityManagerFactory emf = Persistence.createEntityManagerFactory("jpau-test");
+    private RepositoryMetrics      metrics;
+    private InstrumentedRepository instance;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        metrics = new RepositoryMetrics();
+        instance = new InstrumentedRepository(new Facade(emf), metrics);
+    }
+
+    @Test
+    public void recordsCalls()
+    {
+        instance.findCustomer(1);
+        instance.findCustomer(2);
+
+        MethodMetrics findCustomer = metrics.getMethod("findCustomer(long)");
+        assertEquals(2, findCustomer.getCalls());
+        assertEquals(0, findCustomer.getErrors());
+        assertTrue(findCustomer.getLatencyP50() > 0);
+        assertTrue(findCustomer.getLatencyP50() <= findCustomer.getLatencyP99());
+        assertTrue(findCustomer.getLatencyP99() <= findCustomer.getLatencyMax());
+        assertNull(metrics.getMethod("getCustomers()"));
+    }
+
+    @Test
+    public void recordsStatementsAndEntities()
+    {
+        instance.findCustomer(1);
+
+        MethodMetrics findCustomer = metrics.getMethod("findCustomer(long)");
+        assertEquals(1, findCustomer.getStatements());
+        assertEquals(1, findCustomer.getEntitiesLoaded());
+    }
+
+    @Test
+    public void recordsFlushTime()
+    {
+        instance.createCustomer("Name", "Email");
+
+        MethodMetrics createCustomer = metrics.getMethod("createCustomer(String, String)");
+        assertTrue(createCustomer.getFlushTime() > 0);
+        assertTrue(createCustomer.getStatements() >= 1);
+    }
+
+    @Test
+    public void recordsErrors()
+    {
+        Repository failing = (Repository) Proxy.newProxyInstance(Repository.class.getClassLoader(),
+                                                                 new Class[]{Repository.class},
+                                                                 (proxy, method, args) -> {
+                                                                     throw new IllegalStateException();
+                                                                 });
+
+        InstrumentedRepository instance = new InstrumentedRepository(failing, metrics);
+        try {
+            instance.getItem(1);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(1, metrics.getMethod("getItem(long)").getCalls());
+            assertEquals(1, metrics.getMethod("getItem(long)").getErrors());
+        }
+    }
+
+    @Test
+    public void register() throws Exception
+    {
+        ObjectName name = metrics.register("test");
+        try {
+            instance.findCustomer(1);
+            MBeanServer server  = ManagementFactory.getPlatformMBeanServer();
+            TabularData methods = (TabularData) server.getAttribute(name, "Methods");
+            assertEquals(1, methods.size());
+        } finally {
+            metrics.unregister();
+        }
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
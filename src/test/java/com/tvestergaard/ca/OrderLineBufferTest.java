@@ -0,0 +1,156 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OrderLineBufferTest
+{
+
+    private static final EntityManagerFactory emf    = Persistence.createEntityManagerFactory("jpau-test");
+    private final        Facade               facade = new Facade(emf);
+
+    @Test
+    public void flushesOnSizeThreshold()
+    {
+        Order          order = createOrder();
+        List<ItemType> items = facade.getItems();
+        try (OrderLineBuffer instance = new OrderLineBuffer(facade, 3, 1, TimeUnit.HOURS, (lines, e) -> fail())) {
+            instance.createOrderLine(order, 1, items.get(0));
+            instance.createOrderLine(order, 1, items.get(1));
+            assertEquals(2, instance.getPendingLines());
+            assertEquals(0, facade.getOrder(order.getId(), OrderFetchPlan.LINES).getLines().size());
+
+            OrderLine last = instance.createOrderLine(order, 1, items.get(2));
+            assertNotEquals(0, last.getId());
+            assertEquals(0, instance.getPendingLines());
+            assertEquals(1, instance.getFlushCount());
+            assertEquals(3, instance.getFlushedLines());
+            assertEquals(3, facade.getOrder(order.getId(), OrderFetchPlan.LINES).getLines().size());
+        }
+    }
+
+    @Test
+    public void flushesOnTimeThreshold() throws Exception
+    {
+        Order                  order  = createOrder();
+        List<RuntimeException> errors = new CopyOnWriteArrayList<>();
+        try (OrderLineBuffer instance = new OrderLineBuffer(facade, 100, 50, TimeUnit.MILLISECONDS,
+                                                            (lines, e) -> errors.add(e))) {
+            instance.createOrderLine(order, 2, facade.getItem(1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (instance.getFlushCount() == 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            assertEquals(1, instance.getFlushCount());
+            assertEquals(0, instance.getPendingOrders());
+            assertEquals(2 * facade.getItem(1).getPrice(), facade.getTotal(order));
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+    }
+
+    @Test
+    public void closeWaitsForRunningFlush() throws Exception
+    {
+        Order                  order   = createOrder();
+        List<RuntimeException> errors  = new CopyOnWriteArrayList<>();
+        CountDownLatch         started = new CountDownLatch(1);
+        Facade slow = new Facade(emf)
+        {
+            @Override public List<OrderLine> createOrderLines(Order order, List<OrderLine> lines)
+            {
+                started.countDown();
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.createOrderLines(order, lines);
+            }
+        };
+
+        OrderLineBuffer instance = new OrderLineBuffer(slow, 100, 10, TimeUnit.MILLISECONDS,
+                                                       (lines, e) -> errors.add(e));
+        instance.createOrderLine(order, 2, facade.getItem(1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        instance.close();
+
+        assertEquals(1, instance.getFlushCount());
+        assertEquals(1, instance.getFlushedLines());
+        assertEquals(2 * facade.getItem(1).getPrice(), facade.getTotal(order));
+        assertEquals(Collections.emptyList(), errors);
+    }
+
+    @Test
+    public void closeOrder()
+    {
+        Order order = createOrder();
+        try (OrderLineBuffer instance = new OrderLineBuffer(facade, 100, 1, TimeUnit.HOURS, (lines, e) -> fail())) {
+            instance.createOrderLine(order, 1, facade.getItem(1));
+            instance.createOrderLine(order, 1, facade.getItem(2));
+
+            long            version = order.getVersion();
+            List<OrderLine> flushed = instance.closeOrder(order);
+            assertEquals(2, flushed.size());
+            assertEquals(2, facade.getOrder(order.getId(), OrderFetchPlan.LINES).getLines().size());
+            assertEquals(facade.getItem(1).getPrice() + facade.getItem(2).getPrice(), order.getTotal());
+            assertEquals(version + 1, order.getVersion());
+            assertTrue(instance.closeOrder(order).isEmpty());
+            assertTrue(instance.getMaxFlushLatency(TimeUnit.NANOSECONDS) > 0);
+        }
+    }
+
+    @Test
+    public void closeFlushesPendingLines()
+    {
+        Order           order    = createOrder();
+        OrderLineBuffer instance = new OrderLineBuffer(facade, 100, 1, TimeUnit.HOURS, (lines, e) -> fail());
+        instance.createOrderLine(order, 1, facade.getItem(1));
+        instance.close();
+
+        assertEquals(1, facade.getOrder(order.getId(), OrderFetchPlan.LINES).getLines().size());
+        try {
+            instance.createOrderLine(order, 1, facade.getItem(1));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void reportsFailedFlushes()
+    {
+        Order                 order    = createOrder();
+        ItemType              missing  = new ItemType("Missing", "Missing", 1);
+        List<List<OrderLine>> failures = new CopyOnWriteArrayList<>();
+        missing.setId(Long.MAX_VALUE);
+
+        try (OrderLineBuffer instance = new OrderLineBuffer(facade, 1, 1, TimeUnit.HOURS,
+                                                            (lines, e) -> failures.add(lines))) {
+            instance.createOrderLine(order, 1, missing);
+            assertEquals(1, instance.getFailedFlushCount());
+        }
+
+        assertEquals(1, failures.size());
+        assertEquals(1, failures.get(0).size());
+    }
+
+    private Order createOrder()
+    {
+        Customer customer = facade.createCustomer("Orderer", "orderer@order.com");
+        return facade.createOrder(customer);
+    }
+}
@@ -0,0 +1,63 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OrderTotalVerifierTest
+{
+
+    private static final EntityManagerFactory emf = Persistence.createEntityManagerFactory("jpau-test");
+
+    @Test
+    public void totalIsMaintained()
+    {
+        Facade          facade   = new Facade(emf);
+        Customer        customer = facade.createCustomer("Orderer", "orderer@order.com");
+        List<ItemType>  items    = facade.getItems();
+        List<OrderLine> lines    = new ArrayList<>();
+        lines.add(new OrderLine(2, items.get(0)));
+
+        Order order = facade.createOrder(customer, lines);
+        assertEquals(2 * items.get(0).getPrice(), facade.getTotal(order));
+
+        facade.createOrderLine(order, 3, items.get(1));
+        assertEquals(2 * items.get(0).getPrice() + 3 * items.get(1).getPrice(), facade.getTotal(order));
+        assertTrue(new OrderTotalVerifier(emf, 10).findDrifted().isEmpty());
+    }
+
+    @Test
+    public void rebuild()
+    {
+        Facade   facade = new Facade(emf);
+        ItemType item   = facade.getItem(1);
+        Order    order  = facade.createOrder(facade.createCustomer("Orderer", "orderer@order.com"));
+        facade.createOrderLine(order, 4, item);
+
+        EntityManager entityManager = emf.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.createNativeQuery("UPDATE order_ SET total = 0 WHERE id = " + order.getId())
+                         .executeUpdate();
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+
+        OrderTotalVerifier instance = new OrderTotalVerifier(emf, 1);
+        assertTrue(instance.findDrifted().contains(order.getId()));
+        assertTrue(instance.rebuild() >= 1);
+        assertTrue(instance.findDrifted().isEmpty());
+        assertEquals(4 * item.getPrice(), facade.getTotal(order));
+    }
+}
@@ -0,0 +1,202 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.hibernate.Session;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Parameter;
+import javax.persistence.Persistence;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@code EXPLAIN} on the statements issued by the named queries and the {@link Repository}, and fails when a
+ * table is read using a full table scan where no index could have been used. Only the first table of a statement
+ * without a {@code WHERE} clause may be scanned, as such statements read every row of that table anyway.
+ */
+public class QueryPlanTest
+{
+
+    private static final EntityManagerFactory emf = Persistence.createEntityManagerFactory("jpau-test");
+
+    @Test
+    public void namedQueries()
+    {
+        List<String> violations = new ArrayList<>();
+        for (NamedQuery namedQuery : namedQueries()) {
+            EntityManager entityManager = emf.createEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                Query  query = entityManager.createNamedQuery(namedQuery.name());
+                Object value = 1L;
+                for (Parameter<?> parameter : query.getParameters()) {
+                    Object argument = argument(entityManager, parameter.getName());
+                    if (argument instanceof String)
+                        value = argument;
+                    query.setParameter(parameter.getName(), argument);
+                }
+
+                try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+                    if (namedQuery.query().trim().toUpperCase(Locale.ROOT).startsWith("UPDATE"))
+                        query.executeUpdate();
+                    else
+                        query.getResultList();
+
+                    for (String statement : counter.getStatements())
+                        violations.addAll(explain(entityManager, namedQuery.name(), statement, value));
+                }
+            } finally {
+                entityManager.getTransaction().rollback();
+                entityManager.close();
+            }
+        }
+
+        assertTrue(String.join(System.lineSeparator(), violations), violations.isEmpty());
+    }
+
+    @Test
+    public void repositoryStatements()
+    {
+        Facade          facade   = new Facade(emf);
+        Customer        customer = facade.createCustomer("Explained", "explained@example.com");
+        List<ItemType>  items    = facade.getItems();
+        List<OrderLine> lines    = new ArrayList<>();
+        lines.add(new OrderLine(1, items.get(0)));
+        lines.add(new OrderLine(2, items.get(1)));
+        Order order = facade.createOrder(customer, lines);
+
+        List<String> statements;
+        try (SqlStatementCounter counter = SqlStatementCounter.start();
+             TransactionalRepository repository = new TransactionalRepository(emf, TransactionStrategy.ROLLBACK)) {
+            repository.findCustomer(customer.getId());
+            repository.getCustomers(0, 10);
+            for (OrderFetchPlan plan : OrderFetchPlan.values()) {
+                repository.getOrder(order.getId(), plan);
+                repository.getOrders(customer, plan);
+            }
+            repository.getOrders(0, 10);
+            repository.getOrders(customer, 0, 10);
+            repository.getOrderSummaries(customer, 0, 10);
+            repository.getTotal(order);
+            repository.getTotals(Arrays.asList(order));
+            repository.getTotals(customer);
+            repository.getItem(items.get(0).getId());
+            repository.getItems(0, 10);
+            repository.createOrderLine(repository.getOrder(order.getId()), 1, items.get(2));
+            repository.findDriftedTotals(0, 10);
+            repository.rebuildTotals(Arrays.asList(order.getId()));
+            statements = new ArrayList<>(counter.getStatements());
+        }
+
+        List<String>  violations    = new ArrayList<>();
+        EntityManager entityManager = emf.createEntityManager();
+        try {
+            for (String statement : statements)
+                violations.addAll(explain(entityManager, "Repository", statement, 1L));
+        } finally {
+            entityManager.close();
+        }
+
+        assertFalse(statements.isEmpty());
+        assertTrue(String.join(System.lineSeparator(), violations), violations.isEmpty());
+    }
+
+    /**
+     * Returns the named queries declared on the entities of the persistence unit.
+     *
+     * @return The named queries declared on the entities of the persistence unit.
+     */
+    private static List<NamedQuery> namedQueries()
+    {
+        List<NamedQuery> queries = new ArrayList<>();
+        for (EntityType<?> entity : emf.getMetamodel().getEntities()) {
+            NamedQueries namedQueries = entity.getJavaType().getAnnotation(NamedQueries.class);
+            if (namedQueries != null)
+                queries.addAll(Arrays.asList(namedQueries.value()));
+            NamedQuery namedQuery = entity.getJavaType().getAnnotation(NamedQuery.class);
+            if (namedQuery != null)
+                queries.add(namedQuery);
+        }
+
+        assertFalse(queries.isEmpty());
+        return queries;
+    }
+
+    /**
+     * Returns the argument bound to the named query parameter with the provided name.
+     *
+     * @param entityManager The entity manager used to find entity arguments.
+     * @param name          The name of the parameter.
+     * @return The argument bound to the named query parameter with the provided name.
+     */
+    private static Object argument(EntityManager entityManager, String name)
+    {
+        switch (name) {
+            case "customer":
+                return entityManager.find(Customer.class, 1L);
+            case "email":
+                return "tvestergaard@hotmail.com";
+            case "ids":
+                return Arrays.asList(1L, 2L);
+            default:
+                return 1L;
+        }
+    }
+
+    /**
+     * Runs {@code EXPLAIN} on the provided statement, binding the provided value to each of its parameters.
+     *
+     * @param entityManager The entity manager whose connection the statement is explained on.
+     * @param source        The name of the query that issued the statement, used in the violations.
+     * @param sql           The statement to explain.
+     * @param value         The value bound to each parameter of the statement.
+     * @return The table accesses of the statement that scan the entire table without being able to use an index.
+     */
+    private static List<String> explain(EntityManager entityManager, String source, String sql, Object value)
+    {
+        String lower = sql.trim().toLowerCase(Locale.ROOT);
+        if (!lower.startsWith("select") && !lower.startsWith("update") && !lower.startsWith("delete"))
+            return new ArrayList<>();
+
+        return entityManager.unwrap(Session.class).doReturningWork((Connection connection) -> {
+            List<String> violations = new ArrayList<>();
+            boolean      filtered   = lower.contains(" where ");
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = (int) sql.chars().filter(c -> c == '?').count();
+                for (int x = 1; x <= parameters; x++)
+                    statement.setObject(x, value);
+
+                try (ResultSet plan = statement.executeQuery()) {
+                    boolean first = true;
+                    while (plan.next()) {
+                        if ("ALL".equals(plan.getString("type")) && plan.getString("possible_keys") == null
+                            && (filtered || !first))
+                            violations.add(source + ": full scan of " + plan.getString("table") + " in " + sql);
+                        first = false;
+                    }
+                }
+            } catch (SQLException e) {
+                violations.add(source + ": could not explain " + sql + " (" + e.getMessage() + ")");
+            }
+
+            return violations;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Persistence;
+import javax.persistence.RollbackException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest
+{
+
+    private static final EntityManagerFactory emf = Persistence.createEntityManagerFactory("jpau-test");
+
+    @Test
+    public void retriesConflicts()
+    {
+        RetryPolicy   instance = new RetryPolicy(3, 1, 5, TimeUnit.MILLISECONDS);
+        AtomicInteger calls    = new AtomicInteger();
+        String result = instance.execute(attempt -> {
+            calls.incrementAndGet();
+            if (attempt < 3)
+                throw new RollbackException(new OptimisticLockException());
+            return "result";
+        });
+
+        assertEquals("result", result);
+        assertEquals(3, calls.get());
+        assertEquals(3, instance.getAttemptCount());
+        assertEquals(2, instance.getConflictCount());
+        assertEquals(2, instance.getRetryCount());
+        assertEquals(0, instance.getExhaustedCount());
+        assertEquals(2.0 / 3, instance.getConflictRate(), 0.0001);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts()
+    {
+        RetryPolicy instance = new RetryPolicy(2, 0, 0, TimeUnit.MILLISECONDS);
+        try {
+            instance.execute(attempt -> {
+                throw new OptimisticLockException();
+            });
+            fail();
+        } catch (OptimisticLockException e) {
+            // expected
+        }
+
+        assertEquals(2, instance.getAttemptCount());
+        assertEquals(1, instance.getExhaustedCount());
+    }
+
+    @Test
+    public void doesNotRetryOtherExceptions()
+    {
+        RetryPolicy instance = new RetryPolicy(5, 0, 0, TimeUnit.MILLISECONDS);
+        try {
+            instance.execute(attempt -> {
+                throw new IllegalStateException();
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(1, instance.getAttemptCount());
+        assertEquals(0, instance.getConflictCount());
+    }
+
+    @Test
+    public void facadeRetriesStaleOrder()
+    {
+        Facade   facade = new Facade(emf);
+        ItemType item   = facade.getItem(1);
+        Order    order  = facade.createOrder(facade.createCustomer("Orderer", "orderer@order.com"));
+        Order    first  = facade.getOrder(order.getId());
+        Order    second = facade.getOrder(order.getId());
+
+        facade.setRetryPolicy(RetryPolicy.never());
+        facade.createOrderLine(first, 1, item);
+        assertEquals(order.getVersion() + 1, first.getVersion());
+        try {
+            facade.createOrderLine(second, 1, item);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(RetryPolicy.isConflict(e));
+        }
+        assertEquals(1, facade.getRetryPolicy().getConflictCount());
+
+        facade.setRetryPolicy(new RetryPolicy(3, 1, 5, TimeUnit.MILLISECONDS));
+        facade.createOrderLine(second, 2, item);
+        assertEquals(1, facade.getRetryPolicy().getRetryCount());
+        assertEquals(first.getVersion() + 1, second.getVersion());
+        assertEquals(3 * item.getPrice(), facade.getTotal(order));
+        assertEquals(3 * item.getPrice(), second.getTotal());
+    }
+
+    @Test
+    public void batchedLinesMakeCopiesStale()
+    {
+        Facade   facade = new Facade(emf);
+        ItemType item   = facade.getItem(1);
+        Order    order  = facade.createOrder(facade.createCustomer("Batcher", "batcher@order.com"));
+        Order    stale  = facade.getOrder(order.getId());
+
+        facade.createOrderLines(order, Arrays.asList(new OrderLine(2, item)));
+        assertEquals(stale.getVersion() + 1, order.getVersion());
+        assertEquals(2 * item.getPrice(), order.getTotal());
+
+        facade.setRetryPolicy(new RetryPolicy(3, 1, 5, TimeUnit.MILLISECONDS));
+        facade.createOrderLine(stale, 1, item);
+        assertEquals(1, facade.getRetryPolicy().getConflictCount());
+        assertEquals(3 * item.getPrice(), stale.getTotal());
+        assertEquals(3 * item.getPrice(), facade.getTotal(order));
+    }
+}
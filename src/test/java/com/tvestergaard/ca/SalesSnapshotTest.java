@@ -0,0 +1,130 @@
+package com.tvestergaard.ca;
+
+import com.tvestergaard.ca.entities.Customer;
+import com.tvestergaard.ca.entities.ItemType;
+import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.tvestergaard.ca.SalesSnapshot.Dimension.CUSTOMER;
+import static com.tvestergaard.ca.SalesSnapshot.Dimension.ITEM;
+import static com.tvestergaard.ca.SalesSnapshot.Measure.LINES;
+import static com.tvestergaard.ca.SalesSnapshot.Measure.QUANTITY;
+import static com.tvestergaard.ca.SalesSnapshot.Measure.REVENUE;
+import static org.junit.Assert.*;
+
+public class SalesSnapshotTest
+{
+
+    private static final EntityManagerFactory emf    = Persistence.createEntityManagerFactory("jpau-test");
+    private final        Facade               facade = new Facade(emf);
+
+    @Test
+    public void groupsByCustomer()
+    {
+        List<ItemType> items    = facade.getItems();
+        Customer       customer = facade.createCustomer("Analysed", "analysed@example.com");
+        createOrder(customer, items.get(0), 2, items.get(1), 3);
+
+        SalesSnapshot instance = SalesSnapshot.load(emf, 2);
+        assertEquals(2, instance.group(CUSTOMER, LINES).get(customer.getId()));
+        assertEquals(5, instance.group(CUSTOMER, QUANTITY).get(customer.getId()));
+        assertEquals(2 * items.get(0).getPrice() + 3 * items.get(1).getPrice(),
+                     instance.group(CUSTOMER, REVENUE).get(customer.getId()));
+    }
+
+    @Test
+    public void partitionsAgree()
+    {
+        List<ItemType> items = facade.getItems();
+        createOrder(facade.createCustomer("Partitioned", "partitioned@example.com"), items.get(0), 1, items.get(1), 4);
+
+        SalesSnapshot instance = SalesSnapshot.load(emf);
+        for (SalesSnapshot.Dimension dimension : SalesSnapshot.Dimension.values()) {
+            for (SalesSnapshot.Measure measure : SalesSnapshot.Measure.values()) {
+                SalesGroups sequential = instance.group(dimension, measure, 1);
+                SalesGroups parallel   = instance.group(dimension, measure, 3);
+                assertEquals(sequential.size(), parallel.size());
+                for (int x = 0; x < sequential.size(); x++) {
+                    assertEquals(sequential.getKey(x), parallel.getKey(x));
+                    assertEquals(sequential.getValue(x), parallel.getValue(x));
+                }
+                assertEquals(instance.total(measure), sequential.sum());
+            }
+        }
+
+        long[] histogram = instance.quantityHistogram(3);
+        assertEquals(4, histogram.length);
+        assertTrue(histogram[3] >= 1);
+        assertEquals(instance.size(), histogram[0] + histogram[1] + histogram[2] + histogram[3]);
+    }
+
+    @Test
+    public void refreshAppendsNewOrders()
+    {
+        ItemType      item     = facade.getItems().get(0);
+        Customer      customer = facade.createCustomer("Refreshed", "refreshed@example.com");
+        SalesSnapshot before   = SalesSnapshot.load(emf);
+        Order         order    = createOrder(customer, item, 4, item, 1);
+
+        SalesSnapshot after = before.refresh();
+        assertEquals(before.size() + 2, after.size());
+        assertEquals(order.getId(), after.getLastOrder());
+        assertEquals(5 * item.getPrice(), after.group(CUSTOMER, REVENUE).get(customer.getId()));
+        assertEquals(0, before.group(CUSTOMER, REVENUE).get(customer.getId()));
+
+        SalesSnapshot again = before.refresh();
+        assertEquals(after.size(), again.size());
+        assertEquals(5 * item.getPrice(), again.group(CUSTOMER, REVENUE).get(customer.getId()));
+        assertEquals(after.total(REVENUE), again.total(REVENUE));
+        assertEquals(after.size(), after.refresh().size());
+    }
+
+    @Test
+    public void top()
+    {
+        SalesGroups instance = new SalesGroups(new long[]{1, 2, 3, 4}, new long[]{5, 9, 5, 1});
+
+        SalesGroups top = instance.top(3);
+        assertEquals(3, top.size());
+        assertEquals(2, top.getKey(0));
+        assertEquals(9, top.getValue(0));
+        assertEquals(1, top.getKey(1));
+        assertEquals(3, top.getKey(2));
+
+        assertEquals(4, instance.top(10).size());
+        assertEquals(4, instance.top(10).getKey(3));
+        assertEquals(0, instance.top(0).size());
+    }
+
+    @Test
+    public void topItems()
+    {
+        List<ItemType> items = facade.getItems();
+        createOrder(facade.createCustomer("Ranked", "ranked@example.com"), items.get(0), 1, items.get(1), 1);
+
+        SalesSnapshot instance = SalesSnapshot.load(emf);
+        SalesGroups   all      = instance.group(ITEM, REVENUE);
+        SalesGroups   top      = instance.top(ITEM, REVENUE, 1);
+        assertEquals(1, top.size());
+
+        long max = Long.MIN_VALUE;
+        for (int x = 0; x < all.size(); x++)
+            max = Math.max(max, all.getValue(x));
+        assertEquals(max, top.getValue(0));
+    }
+
+    private Order createOrder(Customer customer, ItemType first, int firstQuantity, ItemType second, int secondQuantity)
+    {
+        List<OrderLine> lines = new ArrayList<>();
+        lines.add(new OrderLine(firstQuantity, first));
+        lines.add(new OrderLine(secondQuantity, second));
+
+        return facade.createOrder(customer, lines);
+    }
+}
@@ -0,0 +1,198 @@
+package com.tvestergaard.ca;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Counts the SQL statements prepared on the current thread while a counter is started, so that tests can assert the
+ * number of statements issued by a {@link Repository} operation. The counter is enabled by setting the
+ * {@code hibernate.session_factory.statement_inspector} property of the persistence unit to the name of this class.
+ * Batched statements are counted once for each batch.
+ * <p>
+ * <pre>
+ * try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+ *     repository.getOrder(id, OrderFetchPlan.DETAILS);
+ *     counter.assertSelects(1);
+ * }
+ * </pre>
+ */
+public class SqlStatementCounter implements StatementInspector, AutoCloseable
+{
+
+    /**
+     * The type of a counted statement.
+     */
+    public enum Type
+    {
+        SELECT, INSERT, UPDATE, DELETE, OTHER
+    }
+
+    /**
+     * The counter started on the current thread.
+     */
+    private static final ThreadLocal<SqlStatementCounter> current = new ThreadLocal<>();
+
+    /**
+     * The statements counted, in the order they were prepared.
+     */
+    private final List<String> statements = new ArrayList<>();
+
+    /**
+     * Starts a new counter on the current thread.
+     *
+     * @return The new counter, that must be closed.
+     */
+    public static SqlStatementCounter start()
+    {
+        SqlStatementCounter counter = new SqlStatementCounter();
+        current.set(counter);
+
+        return counter;
+    }
+
+    /**
+     * Counts the provided statement into the counter of the current thread. Called by Hibernate.
+     *
+     * @param sql The statement to count.
+     * @return The provided statement, unchanged.
+     */
+    @Override public String inspect(String sql)
+    {
+        SqlStatementCounter counter = current.get();
+        if (counter != null)
+            counter.statements.add(sql);
+
+        return sql;
+    }
+
+    /**
+     * Returns the statements counted so far.
+     *
+     * @return The statements counted so far, in the order they were prepared.
+     */
+    public List<String> getStatements()
+    {
+        return Collections.unmodifiableList(statements);
+    }
+
+    /**
+     * Returns the number of statements of the provided type counted so far.
+     *
+     * @param type The type of statements to count.
+     * @return The number of statements of the provided type.
+     */
+    public int count(Type type)
+    {
+        int count = 0;
+        for (String statement : statements)
+            if (typeOf(statement) == type)
+                count++;
+
+        return count;
+    }
+
+    /**
+     * Returns the number of statements counted so far.
+     *
+     * @return The number of statements counted so far.
+     */
+    public int count()
+    {
+        return statements.size();
+    }
+
+    /**
+     * Discards the statements counted so far.
+     */
+    public void reset()
+    {
+        statements.clear();
+    }
+
+    /**
+     * Asserts that at most the provided number of select statements have been counted.
+     *
+     * @param max The maximum number of select statements.
+     */
+    public void assertSelects(int max)
+    {
+        assertAtMost(Type.SELECT, max);
+    }
+
+    /**
+     * Asserts that at most the provided number of insert statements have been counted.
+     *
+     * @param max The maximum number of insert statements.
+     */
+    public void assertInserts(int max)
+    {
+        assertAtMost(Type.INSERT, max);
+    }
+
+    /**
+     * Asserts that at most the provided number of update statements have been counted.
+     *
+     * @param max The maximum number of update statements.
+     */
+    public void assertUpdates(int max)
+    {
+        assertAtMost(Type.UPDATE, max);
+    }
+
+    /**
+     * Asserts that at most the provided number of statements of the provided type have been counted.
+     *
+     * @param type The type of statements to count.
+     * @param max  The maximum number of statements of the provided type.
+     * @throws AssertionError When more statements of the provided type have been counted, listing the statements.
+     */
+    public void assertAtMost(Type type, int max)
+    {
+        int count = count(type);
+        if (count <= max)
+            return;
+
+        StringBuilder message = new StringBuilder();
+        message.append("Expected at most ").append(max).append(' ').append(type).append(" statements, but ")
+               .append(count).append(" were issued:");
+        for (String statement : statements)
+            if (typeOf(statement) == type)
+                message.append(System.lineSeparator()).append("    ").append(statement);
+
+        throw new AssertionError(message.toString());
+    }
+
+    /**
+     * Stops the counter. Statements prepared after the counter is stopped are not counted.
+     */
+    @Override public void close()
+    {
+        if (current.get() == this)
+            current.remove();
+    }
+
+    /**
+     * Returns the type of the provided statement.
+     *
+     * @param sql The statement.
+     * @return The type of the provided statement.
+     */
+    private static Type typeOf(String sql)
+    {
+        String trimmed = sql.trim().toLowerCase(Locale.ROOT);
+        if (trimmed.startsWith("select") || trimmed.startsWith("with"))
+            return Type.SELECT;
+        if (trimmed.startsWith("insert"))
+            return Type.INSERT;
+        if (trimmed.startsWith("update"))
+            return Type.UPDATE;
+        if (trimmed.startsWith("delete"))
+            return Type.DELETE;
+
+        return Type.OTHER;
+    }
+}
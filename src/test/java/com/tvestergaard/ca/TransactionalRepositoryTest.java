@@ -3,6 +3,9 @@ package com.tvestergaard.ca;
 import com.tvestergaard.ca.entities.Customer;
 import com.tvestergaard.ca.entities.ItemType;
 import com.tvestergaard.ca.entities.Order;
+import com.tvestergaard.ca.entities.OrderLine;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -10,11 +13,15 @@ import org.junit.Test;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.tvestergaard.ca.TransactionStrategy.COMMIT;
+import static com.tvestergaard.ca.TransactionStrategy.READ_ONLY;
 import static com.tvestergaard.ca.TransactionStrategy.ROLLBACK;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.*;
@@ -86,6 +93,53 @@ public class TransactionalRepositoryTest
         assertNull(other.findCustomer(customer.getId()));
     }
 
+    @Test
+    public void readOnly()
+    {
+        Customer customer = instance.createCustomer("Name", "Email");
+        instance.commit();
+
+        try (TransactionalRepository rollback = new TransactionalRepository(emf, ROLLBACK);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            rollback.findCustomer(customer.getId()).setName("Changed");
+            rollback.getCustomers();
+            assertEquals(1, counter.count(SqlStatementCounter.Type.UPDATE));
+        }
+
+        try (TransactionalRepository readOnly = new TransactionalRepository(emf, READ_ONLY);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            assertTrue(readOnly.isReadOnly());
+            Customer find = readOnly.findCustomer(customer.getId());
+            find.setName("Changed");
+
+            // The flush mode is manual, so the query does not flush the change
+            readOnly.getCustomers();
+            // The entities are read-only, so committing does not write the change either
+            readOnly.commit();
+            assertEquals(0, counter.count(SqlStatementCounter.Type.UPDATE));
+        }
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            assertEquals("Name", other.findCustomer(customer.getId()).getName());
+        }
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            Customer find = other.findCustomer(customer.getId());
+            assertEquals("Name", find.getName());
+            find.setName("Changed");
+        }
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            assertEquals("Changed", other.findCustomer(customer.getId()).getName());
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void onCloseReadOnly() throws Exception
+    {
+        instance.onClose(READ_ONLY);
+    }
+
     @Test
     public void isActive() throws Exception
     {
@@ -104,6 +158,23 @@ public class TransactionalRepositoryTest
         assertEquals(customer, find);
     }
 
+    @Test
+    public void generatedIdsFollowSeededRows()
+    {
+        Customer customer = instance.createCustomer("Generated", "generated@example.com");
+        ItemType itemType = instance.createItemType("Generated", "Generated", 1);
+        instance.commit();
+
+        assertTrue(customer.getId() > 4);
+        assertTrue(itemType.getId() > 4);
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            assertEquals("Generated", other.findCustomer(customer.getId()).getName());
+            assertEquals("Thorbjørn Vestergaard", other.findCustomer(4).getName());
+            assertEquals("Generated", other.getItem(itemType.getId()).getName());
+            assertEquals("Product Four", other.getItem(4).getName());
+        }
+    }
+
     @Test
     public void findCustomer()
     {
@@ -124,6 +195,31 @@ public class TransactionalRepositoryTest
         assertEquals("Thorbjørn Vestergaard", customers.get(3).getName());
     }
 
+    @Test
+    public void getCustomersAfter()
+    {
+        List<Customer> first = instance.getCustomers(0, 2);
+        assertEquals(2, first.size());
+        assertEquals("Thomas Vestergaard", first.get(0).getName());
+        assertEquals("Sanne Vestergaard", first.get(1).getName());
+
+        List<Customer> second = instance.getCustomers(first.get(1).getId(), 2);
+        assertEquals(2, second.size());
+        assertEquals("Kasper Vestergaard", second.get(0).getName());
+        assertEquals("Thorbjørn Vestergaard", second.get(1).getName());
+    }
+
+    @Test
+    public void streamCustomers()
+    {
+        try (Stream<Customer> stream = instance.streamCustomers(2)) {
+            List<Customer> customers = stream.limit(4).collect(Collectors.toList());
+            assertEquals(4, customers.size());
+            for (Customer customer : customers)
+                assertNotSame(customer, instance.findCustomer(customer.getId()));
+        }
+    }
+
     @Test
     public void createOrder()
     {
@@ -142,6 +238,126 @@ public class TransactionalRepositoryTest
         assertEquals(order, find);
     }
 
+    @Test
+    public void getOrderWithPlan()
+    {
+        Customer       customer = instance.createCustomer("Purchaser", "email@email.com");
+        Order          order    = instance.createOrder(customer);
+        List<ItemType> items    = instance.getItems();
+        for (ItemType item : items)
+            instance.createOrderLine(order, 1, item);
+        instance.commit();
+
+        Order find;
+        try (TransactionalRepository other = new TransactionalRepository(emf);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            find = other.getOrder(order.getId(), OrderFetchPlan.DETAILS);
+            counter.assertSelects(1);
+        }
+
+        assertEquals(customer.getName(), find.getCustomer().getName());
+        assertEquals(items.size(), find.getLines().size());
+        Set<String> names = new HashSet<>();
+        for (OrderLine line : find.getLines())
+            names.add(line.getItem().getName());
+        for (ItemType item : items)
+            assertTrue(names.contains(item.getName()));
+    }
+
+    @Test
+    public void getOrdersFromCustomerWithPlan()
+    {
+        Customer       customer = instance.createCustomer("Purchaser", "email@email.com");
+        List<ItemType> items    = instance.getItems();
+        for (int x = 0; x < 2; x++) {
+            Order order = instance.createOrder(customer);
+            for (ItemType item : items)
+                instance.createOrderLine(order, 1, item);
+        }
+        instance.commit();
+
+        List<Order> orders;
+        try (TransactionalRepository other = new TransactionalRepository(emf);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            orders = other.getOrders(customer, OrderFetchPlan.LINES);
+            counter.assertSelects(1);
+        }
+
+        assertEquals(2, orders.size());
+        for (Order order : orders)
+            assertEquals(items.size(), order.getLines().size());
+    }
+
+    @Test
+    public void getOrderSummaries()
+    {
+        Customer       customer = instance.createCustomer("Purchaser", "email@email.com");
+        List<ItemType> items    = instance.getItems();
+        Order          first    = instance.createOrder(customer);
+        Order          empty    = instance.createOrder(customer);
+        for (ItemType item : items)
+            instance.createOrderLine(first, 2, item);
+        instance.commit();
+
+        try (TransactionalRepository other = new TransactionalRepository(emf);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            List<OrderSummary> summaries = other.getOrderSummaries(customer);
+            counter.assertSelects(1);
+            assertEquals(2, summaries.size());
+            assertEquals(first.getId(), summaries.get(0).getOrderId());
+            assertEquals(customer.getId(), summaries.get(0).getCustomerId());
+            assertEquals("Purchaser", summaries.get(0).getCustomerName());
+            assertEquals(items.size(), summaries.get(0).getLineCount());
+            assertEquals(other.getTotal(first), summaries.get(0).getTotal());
+            assertEquals(empty.getId(), summaries.get(1).getOrderId());
+            assertEquals(0, summaries.get(1).getLineCount());
+            assertEquals(0, summaries.get(1).getTotal());
+
+            assertEquals(summaries.subList(1, 2), other.getOrderSummaries(customer, first.getId(), 10));
+        }
+    }
+
+    @Test
+    public void findCustomers()
+    {
+        try (TransactionalRepository other = new TransactionalRepository(emf);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            EntityLookup<Customer> lookup = other.findCustomers(new long[]{3, 1, 34546, 2});
+            counter.assertSelects(2);
+            assertEquals(4, lookup.size());
+            assertEquals(3, lookup.get(0).getId());
+            assertEquals(1, lookup.get(1).getId());
+            assertNull(lookup.get(2));
+            assertEquals(2, lookup.get(3).getId());
+            assertArrayEquals(new long[]{34546}, lookup.getMissing());
+            assertEquals(3, lookup.getFound().size());
+            assertFalse(lookup.isComplete());
+
+            counter.reset();
+            EntityLookup<Customer> managed = other.findCustomers(Arrays.asList(2L, 1L));
+            counter.assertSelects(0);
+            assertSame(lookup.get(3), managed.get(0));
+            assertTrue(managed.isComplete());
+        }
+    }
+
+    @Test
+    public void getItemsByIds()
+    {
+        List<ItemType> items = instance.getItems();
+        instance.commit();
+
+        try (TransactionalRepository other = new TransactionalRepository(emf);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            EntityLookup<ItemType> lookup = other.getItems(new long[]{items.get(1).getId(), items.get(0).getId()});
+            counter.assertSelects(0);
+            assertEquals(items.get(1), lookup.get(0));
+            assertEquals(items.get(0), lookup.get(1));
+            assertTrue(lookup.isComplete());
+            assertEquals(0, other.getItems(new long[0]).size());
+        }
+    }
+
     @Test
     public void getOrderReturnsNull()
     {
@@ -177,6 +393,127 @@ public class TransactionalRepositoryTest
         assertEquals(created, customerOrders);
     }
 
+    @Test
+    public void hashingOrdersDoesNotLoadAssociations()
+    {
+        Customer       customer = instance.createCustomer("Purchaser", "email@email.com");
+        List<ItemType> items    = instance.getItems();
+        for (int x = 0; x < 4; x++) {
+            Order order = instance.createOrder(customer);
+            for (ItemType item : items)
+                instance.createOrderLine(order, 1, item);
+        }
+        instance.commit();
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            List<Order> orders = other.getOrders(customer);
+            try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+                Set<Order> set = new HashSet<>(orders);
+                for (Order order : orders)
+                    assertTrue(set.contains(order));
+                assertEquals(0, counter.count());
+            }
+
+            assertEquals(orders.get(0), other.getOrder(orders.get(0).getId()));
+        }
+    }
+
+    @Test
+    public void manyToOneAssociationsAreLazy()
+    {
+        Customer       customer = instance.createCustomer("Purchaser", "email@email.com");
+        List<ItemType> items    = instance.getItems();
+        Order          order    = instance.createOrder(customer);
+        instance.createOrderLine(order, 1, items.get(0));
+        instance.commit();
+
+        try (TransactionalRepository other = new TransactionalRepository(emf);
+             SqlStatementCounter counter = SqlStatementCounter.start()) {
+            List<Order> orders = other.getOrders(customer);
+            counter.assertSelects(1);
+            assertFalse(Hibernate.isInitialized(orders.get(0).getCustomer()));
+            assertEquals(customer.getId(), orders.get(0).getCustomer().getId());
+
+            Order lines = other.getOrder(order.getId(), OrderFetchPlan.LINES);
+            assertFalse(Hibernate.isInitialized(lines.getLines().get(0).getItem()));
+        }
+    }
+
+    @Test
+    public void flushUpdatesOnlyChangedColumns()
+    {
+        Customer customer = instance.createCustomer("Before", "unchanged@email.com");
+        Customer other    = instance.createCustomer("Other", "other@email.com");
+        instance.commit().begin();
+        assertTrue(customer instanceof SelfDirtinessTracker);
+        assertFalse(((SelfDirtinessTracker) other).$$_hibernate_hasDirtyAttributes());
+
+        try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+            customer.setName("After");
+            assertFalse(((SelfDirtinessTracker) other).$$_hibernate_hasDirtyAttributes());
+            instance.commit();
+
+            assertEquals(1, counter.count(SqlStatementCounter.Type.UPDATE));
+            String update = counter.getStatements().get(0).toLowerCase();
+            assertTrue(update.contains("name"));
+            assertFalse(update.contains("email"));
+        }
+
+        try (TransactionalRepository reader = new TransactionalRepository(emf)) {
+            assertEquals("After", reader.findCustomer(customer.getId()).getName());
+        }
+    }
+
+    @Test
+    public void hashCodeFollowsId()
+    {
+        instance.onClose(ROLLBACK);
+        OrderLine line = new OrderLine(1, instance.getItems().get(0));
+        assertNotEquals(line, new OrderLine(1, line.getItem()));
+
+        instance.createOrder(instance.findCustomer(1), Arrays.asList(line));
+        assertNotEquals(0, line.getId());
+        assertEquals(Long.hashCode(line.getId()), line.hashCode());
+
+        Set<OrderLine> lines = new HashSet<>(Arrays.asList(line));
+        assertTrue(lines.contains(line));
+    }
+
+    @Test
+    public void hashCodeMatchesLoadedInstances()
+    {
+        OrderLine line     = new OrderLine(1, instance.getItems().get(0));
+        Customer  customer = instance.createCustomer("Hashed", "hashed@example.com");
+        Order     order    = instance.createOrder(customer, Arrays.asList(line));
+        instance.commit();
+
+        Set<OrderLine> lines = new HashSet<>(Arrays.asList(line));
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            OrderLine loaded = other.getOrder(order.getId(), OrderFetchPlan.LINES).getLines().get(0);
+            assertNotSame(line, loaded);
+            assertTrue(lines.contains(loaded));
+
+            Customer      proxy     = other.getOrders(customer).get(0).getCustomer();
+            Set<Customer> customers = new HashSet<>(Arrays.asList(customer));
+            assertTrue(customers.contains(proxy));
+            assertEquals(customer.hashCode(), proxy.hashCode());
+            assertFalse(Hibernate.isInitialized(proxy));
+        }
+    }
+
+    @Test
+    public void getOrdersFromCustomerAfter()
+    {
+        List<Order> created  = new ArrayList<>();
+        Customer    customer = instance.createCustomer("Purchaser", "email@email.com");
+        for (int x = 0; x < 4; x++)
+            created.add(instance.createOrder(customer));
+
+        assertEquals(created.subList(0, 3), instance.getOrders(customer, 0, 3));
+        assertEquals(created.subList(3, 4), instance.getOrders(customer, created.get(2).getId(), 3));
+    }
+
     @Test
     public void createOrderLine()
     {
@@ -184,12 +521,88 @@ public class TransactionalRepositoryTest
         Order          order    = instance.createOrder(customer);
         List<ItemType> items    = instance.getItems();
 
+        try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+            for (int x = 0; x < 4; x++)
+                instance.createOrderLine(order, x + 1, items.get(x));
+            counter.assertSelects(0);
+        }
+
+        assertEquals(order, instance.getOrder(order.getId()));
+    }
+
+    @Test
+    public void createOrderWithLines()
+    {
+        instance.onClose(ROLLBACK);
+        Customer        customer = instance.createCustomer("Orderer", "orderer@order.com");
+        List<ItemType>  items    = instance.getItems();
+        List<OrderLine> lines    = new ArrayList<>();
+
         for (int x = 0; x < 4; x++)
-            instance.createOrderLine(order, x + 1, items.get(x));
+            lines.add(new OrderLine(x + 1, items.get(x)));
+
+        Order order = instance.createOrder(customer, lines);
+        assertEquals(4, order.getLines().size());
+        for (OrderLine line : order.getLines())
+            assertSame(order, line.getOrder());
 
         assertEquals(order, instance.getOrder(order.getId()));
     }
 
+    @Test
+    public void createOrderWithLinesBatchesInserts()
+    {
+        instance.onClose(ROLLBACK);
+        Customer        customer = instance.findCustomer(1);
+        List<ItemType>  items    = instance.getItems();
+        List<OrderLine> lines    = new ArrayList<>();
+
+        for (int x = 0; x < 20; x++)
+            lines.add(new OrderLine(x + 1, items.get(x % items.size())));
+
+        try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+            Order order = instance.createOrder(customer, lines);
+            counter.assertSelects(0);
+            assertEquals(order, instance.getOrder(order.getId()));
+
+            // A single batch for the order, and a single batch for the lines
+            counter.assertInserts(2);
+            counter.assertUpdates(0);
+            counter.assertSelects(1);
+        }
+    }
+
+    @Test
+    public void createOrderWithDetachedItemsBatchesInserts()
+    {
+        instance.onClose(ROLLBACK);
+        Customer       customer;
+        List<ItemType> items;
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            customer = other.findCustomer(1);
+            items = other.getItems();
+        }
+
+        List<OrderLine> lines    = new ArrayList<>();
+        long            expected = 0;
+        for (int x = 0; x < 20; x++) {
+            ItemType item = items.get(x % items.size());
+            lines.add(new OrderLine(x + 1, item));
+            expected += (x + 1) * item.getPrice();
+        }
+
+        try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+            Order order = instance.createOrder(customer, lines);
+            counter.assertSelects(0);
+            assertEquals(expected, order.getTotal());
+            assertEquals(order, instance.getOrder(order.getId()));
+
+            counter.assertInserts(2);
+            counter.assertUpdates(0);
+            counter.assertSelects(1);
+        }
+    }
+
     @Test
     public void createItemType()
     {
@@ -201,6 +614,37 @@ public class TransactionalRepositoryTest
         assertEquals(itemType, instance.getItem(itemType.getId()));
     }
 
+    @Test
+    public void getItemsIsCached()
+    {
+        CacheStatistics statistics = new CacheStatistics(emf);
+        instance.getItems();
+        instance.commit();
+
+        long hits = statistics.getHitCount(CacheStatistics.ITEM_TYPE_QUERY_REGION);
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            other.getItems();
+        }
+
+        assertEquals(hits + 1, statistics.getHitCount(CacheStatistics.ITEM_TYPE_QUERY_REGION));
+        assertEquals(0, statistics.getEvictionCount(CacheStatistics.ITEM_TYPE_REGION));
+    }
+
+    @Test
+    public void createItemTypeInvalidatesCachedItems()
+    {
+        int size = instance.getItems().size();
+        instance.commit();
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            other.createItemType("ItemName", "ItemDescription", 1);
+        }
+
+        try (TransactionalRepository other = new TransactionalRepository(emf)) {
+            assertEquals(size + 1, other.getItems().size());
+        }
+    }
+
     @Test
     public void getTotal()
     {
@@ -215,6 +659,57 @@ public class TransactionalRepositoryTest
             expected += item.getId() * item.getPrice();
         }
 
-        assertEquals(expected, instance.getTotal(order));
+        instance.commit().begin();
+        try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+            assertEquals(expected, instance.getTotal(order));
+            assertEquals(1, counter.count());
+        }
+    }
+
+    @Test
+    public void getTotals()
+    {
+        Customer       customer = instance.createCustomer("Orderer", "orderer@order.com");
+        Order          first    = instance.createOrder(customer);
+        Order          second   = instance.createOrder(customer);
+        Order          empty    = instance.createOrder(customer);
+        List<ItemType> items    = instance.getItems();
+
+        for (ItemType item : items) {
+            instance.createOrderLine(first, 1, item);
+            instance.createOrderLine(second, 2, item);
+        }
+
+        instance.commit().begin();
+        OrderTotals totals;
+        try (SqlStatementCounter counter = SqlStatementCounter.start()) {
+            totals = instance.getTotals(Arrays.asList(first, second, empty));
+            assertEquals(1, counter.count());
+        }
+
+        assertEquals(3, totals.size());
+        assertEquals(instance.getTotal(first), totals.get(first.getId()));
+        assertEquals(instance.getTotal(second), totals.get(second.getId()));
+        assertEquals(2 * totals.get(first.getId()), totals.get(second.getId()));
+        assertTrue(totals.contains(empty.getId()));
+        assertEquals(0, totals.get(empty.getId()));
+    }
+
+    @Test
+    public void getTotalsFromCustomer()
+    {
+        Customer       customer = instance.createCustomer("Orderer", "orderer@order.com");
+        Order          order    = instance.createOrder(customer);
+        List<ItemType> items    = instance.getItems();
+
+        for (ItemType item : items)
+            instance.createOrderLine(order, 1, item);
+
+        // Add another order from a different customer
+        instance.createOrder(instance.createCustomer("Another", "Customer"));
+        OrderTotals totals = instance.getTotals(customer);
+        assertEquals(1, totals.size());
+        assertEquals(order.getId(), totals.getOrder(0));
+        assertEquals(instance.getTotal(order), totals.getTotal(0));
     }
-}
\ No newline at end of file
+}
@@ -3,7 +3,10 @@ INSERT INTO customer (id, name, email) VALUE (2, "Sanne Vestergaard", "svesterga
 INSERT INTO customer (id, name, email) VALUE (3, "Kasper Vestergaard", "kvestergaard@hotmail.com");
 INSERT INTO customer (id, name, email) VALUE (4, "Thorbjørn Vestergaard", "thorvestergaard@hotmail.com");
 
-INSERT INTO itemtype VALUES (1, "Product One", "Product One", 1);
-INSERT INTO itemtype VALUES (2, "Product Two", "Product Two", 2);
-INSERT INTO itemtype VALUES (3, "Product Three", "Product Three", 3);
-INSERT INTO itemtype VALUES (4, "Product Four", "Product Four", 4);
\ No newline at end of file
+INSERT INTO itemtype (id, name, description, price, version) VALUE (1, "Product One", "Product One", 1, 0);
+INSERT INTO itemtype (id, name, description, price, version) VALUE (2, "Product Two", "Product Two", 2, 0);
+INSERT INTO itemtype (id, name, description, price, version) VALUE (3, "Product Three", "Product Three", 3, 0);
+INSERT INTO itemtype (id, name, description, price, version) VALUE (4, "Product Four", "Product Four", 4, 0);
+
+INSERT INTO hibernate_sequences (sequence_name, next_val) VALUE ("Customer", 5) ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, 5);
+INSERT INTO hibernate_sequences (sequence_name, next_val) VALUE ("ItemType", 5) ON DUPLICATE KEY UPDATE next_val = GREATEST(next_val, 5);
\ No newline at end of file